@@ -5,7 +5,8 @@ if [ `uname -s` = 'Darwin' ]; then
 fi
 PATH="/opt/gradle-7.6/bin:/Library/Java/JavaVirtualMachines/jdk-12.jdk/Contents/Home:$PATH"
 
-cp -v wwf.txt java/app/src/main/assets/
+gradle -p java/wordfinder jar |& tee .mk.log
+java -cp java/wordfinder/build/libs/wordfinder.jar org.rkilgore.wordfinder.DawgCompiler wwf.txt java/app/src/main/assets/wwf.dawg |& tee -a .mk.log
 cp -v scrabble_words.txt java/app/src/main/assets/
 gradle -p java/app assembleRelease |& tee -a .mk.log
 ./clean.sh
@@ -4,6 +4,8 @@ PATH="/opt/gradle-7.6/bin:/Library/Java/JavaVirtualMachines/jdk-12.jdk/Contents/
 
 gradle -p java/wordfinder jar |& tee .mk.log
 cp java/wordfinder/build/libs/wordfinder.jar .
+java -cp wordfinder.jar org.rkilgore.wordfinder.DawgCompiler wwf.txt wwf.dawg |& tee -a .mk.log
+java -cp wordfinder.jar org.rkilgore.wordfinder.DawgCompiler scrabble_words.txt scrabble_words.dawg |& tee -a .mk.log
 ./clean.sh
 
 if test -e .mk.log; then
@@ -4,6 +4,7 @@ import static android.view.inputmethod.EditorInfo.IME_ACTION_DONE;
 import static android.view.inputmethod.EditorInfo.IME_ACTION_GO;
 
 import android.content.Context;
+import android.content.res.AssetFileDescriptor;
 import androidx.appcompat.app.AppCompatActivity;
 
 import android.os.Bundle;
@@ -16,14 +17,19 @@ import android.widget.EditText;
 import android.widget.ProgressBar;
 import android.widget.TextView;
 
+import org.rkilgore.wordfinder.Dawg;
 import org.rkilgore.wordfinder.FindResult;
 import org.rkilgore.wordfinder.Mode;
+import org.rkilgore.wordfinder.SortOrder;
 import org.rkilgore.wordfinder.ValidateResult;
 import org.rkilgore.wordfinder.WordFinder;
 import org.rkilgore.wordfinder.WordInfo;
+import org.rkilgore.wordfinder.WordListener;
 
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.channels.FileChannel;
 import java.util.*;
 import java.util.logging.LogManager;
 
@@ -37,8 +43,17 @@ public class MainActivity extends AppCompatActivity implements View.OnKeyListene
       }
     }
 
+    // ---> how many words a search lists at first; "More" doubles it
+    private static final int MAX_RESULTS = 50;
+    private static final String DICT_IMAGE = "wwf.dawg";
+
     private boolean debug;
+    private int maxResults = MAX_RESULTS;
+    // ---> null until loadDictionary finishes; only touched on the UI thread
     private WordFinder wf;
+    // ---> set instead if the dictionary couldn't be loaded
+    private String loadError;
+    private final List<Runnable> whenLoaded = new ArrayList<>();
     private Mode mode;
 
 
@@ -63,13 +78,63 @@ public class MainActivity extends AppCompatActivity implements View.OnKeyListene
         patternText.setOnKeyListener(this);
         lettersText.requestFocus();
 
-        try {
-            this.wf = new WordFinder(new Scanner(getAssets().open("wwf.txt")));
-        } catch (IOException e) {
-            e.printStackTrace();
+        loadDictionary();
+    }
+
+    /**
+     * Loads the dictionary on a background thread, so the fields can be
+     * used straight away.  Searches asked for before it is ready wait in
+     * whenLoaded and start when it is.
+     */
+    private void loadDictionary() {
+        Thread thread = new Thread() {
+          public void run() {
+            long start = System.nanoTime();
+            try {
+              WordFinder loaded = new WordFinder(openDictionary());
+              System.out.println(String.format("loaded dictionary in %dms", (System.nanoTime() - start) / 1000000));
+              runOnUiThread(() -> onDictionaryLoaded(loaded));
+            } catch (IOException e) {
+              e.printStackTrace();
+              String error = "couldn't load the dictionary: " + e.getMessage();
+              runOnUiThread(() -> onDictionaryFailed(error));
+            }
+          }
+        };
+        thread.start();
+    }
+
+    /**
+     * Maps the precompiled image that buildapp.sh puts in the assets.
+     */
+    private Dawg openDictionary() throws IOException {
+        // ---> the image is stored uncompressed (noCompress in build.gradle),
+        // ---> so it can be mapped straight out of the apk
+        try (AssetFileDescriptor afd = getAssets().openFd(DICT_IMAGE);
+             FileInputStream in = afd.createInputStream()) {
+            return Dawg.open(in.getChannel().map(FileChannel.MapMode.READ_ONLY, afd.getStartOffset(), afd.getLength()));
         }
     }
 
+    private void onDictionaryLoaded(WordFinder loaded) {
+        this.wf = loaded;
+        for (Runnable find : this.whenLoaded) {
+            find.run();
+        }
+        this.whenLoaded.clear();
+    }
+
+    /**
+     * Shows why there is no dictionary, in place of any waiting searches.
+     */
+    private void onDictionaryFailed(String error) {
+        this.loadError = error;
+        this.whenLoaded.clear();
+        findViewById(R.id.progressBar).setVisibility(View.GONE);
+        TextView output = findViewById(R.id.outputText);
+        output.setText(error);
+    }
+
     public void onDebugClicked(View view) {
         final CheckBox cb = (CheckBox) view;
         this.debug = cb.isChecked();
@@ -82,10 +147,19 @@ public class MainActivity extends AppCompatActivity implements View.OnKeyListene
     }
 
     public void sendMessage(View view) {
+        this.maxResults = MAX_RESULTS;
         hideKeyboard();
         findWords(view);
     }
 
+    /**
+     * Runs the search again listing twice as many words.
+     */
+    public void onMoreClicked(View view) {
+        this.maxResults *= 2;
+        findWords(view);
+    }
+
     private void hideKeyboard() {
         View view = this.getCurrentFocus();
         if (view != null) {
@@ -108,10 +182,50 @@ public class MainActivity extends AppCompatActivity implements View.OnKeyListene
       }
     }
 
-    private void endFind(ProgressBar spinner, TextView output, StringBuilder sb) {
+    /**
+     * Shows how many words have been found, and the best so far, while a
+     * search is still running.  Updates are posted at most every
+     * PROGRESS_MILLIS so a blank-heavy search doesn't flood the UI thread.
+     */
+    private class ProgressListener implements WordListener {
+        private static final long PROGRESS_MILLIS = 100;
+
+        ProgressListener(TextView output) {
+            this.output = output;
+        }
+
+        @Override
+        public void wordFound(String word, WordInfo info, Mode mode) {
+            ++this.count;
+            wordUpdated(word, info, mode);
+        }
+
+        @Override
+        public void wordUpdated(String word, WordInfo info, Mode mode) {
+            if (this.best == null || info.score.score() > this.bestScore) {
+                this.best = word;
+                this.bestScore = info.score.score();
+            }
+            long now = System.currentTimeMillis();
+            if (now - this.lastPost >= PROGRESS_MILLIS) {
+                this.lastPost = now;
+                String text = String.format("%d words so far, best %s score:%d", this.count, this.best, this.bestScore);
+                runOnUiThread(() -> this.output.setText(text));
+            }
+        }
+
+        private final TextView output;
+        private int count;
+        private String best;
+        private int bestScore;
+        private long lastPost;
+    }
+
+    private void endFind(ProgressBar spinner, TextView output, StringBuilder sb, boolean more) {
       runOnUiThread(() -> {
           spinner.setVisibility(View.GONE);
           output.setText(sb.toString());
+          findViewById(R.id.more).setVisibility(more ? View.VISIBLE : View.GONE);
       });
     }
 
@@ -125,6 +239,12 @@ public class MainActivity extends AppCompatActivity implements View.OnKeyListene
         output.setText("");
         output.invalidate();
         output.requestFocus();
+        findViewById(R.id.more).setVisibility(View.GONE);
+
+        if (this.loadError != null) {
+          output.setText(this.loadError);
+          return;
+        }
 
         ValidateResult res = WordFinder.validate(letters, pattern);
         if (!res.valid) {
@@ -135,56 +255,53 @@ public class MainActivity extends AppCompatActivity implements View.OnKeyListene
 
         ProgressBar spinner = findViewById(R.id.progressBar);
         spinner.setVisibility(View.VISIBLE);
-        this.wf.setDebug(this.debug);
+        if (this.wf == null) {
+            output.setText("loading dictionary...");
+            this.whenLoaded.add(() -> startFind(letters, pattern, output, spinner));
+            return;
+        }
+        startFind(letters, pattern, output, spinner);
+    }
+
+    private void startFind(String letters, String pattern, TextView output, ProgressBar spinner) {
+        WordFinder finder = this.wf;
+        finder.setDebug(this.debug);
+        int limit = this.maxResults;
 
         Thread thread = new Thread() {
           public void run() {
-            FindResult res = wf.findWords(letters, pattern);
+            FindResult res = finder.findTopWords(letters, pattern, limit, SortOrder.SCORE_FEWEST_BLANKS,
+                                                 new ProgressListener(output));
             StringBuilder sb = new StringBuilder();
             if (!res.ok) {
               sb.append(res.errmsg);
-              endFind(spinner, output, sb);
+              endFind(spinner, output, sb, false);
               return;
             }
+            // ---> already ranked best first
             Map<String, WordInfo> map = res.words;
-
-            List<String> words = new ArrayList<>(map.keySet());
-            if (words.size() < 1) {
+            if (map.isEmpty()) {
               sb.append("no words found");
-              endFind(spinner, output, sb);
+              endFind(spinner, output, sb, false);
               return;
             }
+            // ---> a full list may have left words out
+            boolean more = map.size() == limit;
+            if (more) {
+              sb.append(String.format("best %d words:%n", limit));
+            }
 
-            Collections.sort(words, (String a, String b) -> {
-                  WordInfo ainf = map.get(a);
-                  WordInfo binf = map.get(b);
-                  assert ainf != null;
-                  assert binf != null;
-                  if (ainf.score.score() != binf.score.score()) {
-                      return binf.score.score - ainf.score.score;
-                  }
-                  if (a.length() != b.length()) {
-                      return b.length() - a.length();
-                  }
-                  if (ainf.dotVals.length() != binf.dotVals.length()) {
-                      return ainf.dotVals.length() - binf.dotVals.length();
-                  }
-                  if (!ainf.dotVals.equals(binf.dotVals)) {
-                      return ainf.dotVals.compareTo(binf.dotVals);
-                  }
-                  return a.compareTo(b);
-            });
-
-            System.out.println("printing results: mode = " + wf.getMode());
-            for (String word : words) {
-                WordInfo winfo = map.get(word);
+            System.out.println("printing results: mode = " + res.mode);
+            for (Map.Entry<String, WordInfo> entry : map.entrySet()) {
+                String word = entry.getKey();
+                WordInfo winfo = entry.getValue();
                 sb.append(String.format("%s%s%s score:%d%n",
                         winfo.dotVals.isEmpty() ? "" : winfo.dotVals + ": ",
                         word,
-                        winfo.overUnder.isEmpty() ? "" : String.format(" %s", winfo.overUnder.forWord(word, wf.getMode())),
+                        winfo.overUnder.isEmpty() ? "" : String.format(" %s", winfo.overUnder.forWord(word, res.mode)),
                         winfo.score.score()));
             }
-            endFind(spinner, output, sb);
+            endFind(spinner, output, sb, more);
           }
         };
         thread.start();
@@ -192,6 +309,7 @@ public class MainActivity extends AppCompatActivity implements View.OnKeyListene
 
     public boolean onKey(View view, int keyCode, KeyEvent event) {
       if (Arrays.asList(IME_ACTION_DONE, IME_ACTION_GO, KeyEvent.KEYCODE_ENTER).contains(keyCode)) {
+          this.maxResults = MAX_RESULTS;
           hideKeyboard();
           findWords(view);
       }
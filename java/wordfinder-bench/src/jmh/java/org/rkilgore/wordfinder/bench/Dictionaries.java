@@ -0,0 +1,17 @@
+package org.rkilgore.wordfinder.bench;
+
+import java.io.File;
+
+/**
+ * Finds the word lists at the top of the repo.  The jmh task passes their
+ * directory in as wordfinder.dicts.
+ */
+final class Dictionaries {
+  private Dictionaries() {
+  }
+
+  static String path(String name) {
+    File dir = new File(System.getProperty("wordfinder.dicts", "../.."));
+    return new File(dir, name).getPath();
+  }
+}
@@ -0,0 +1,56 @@
+package org.rkilgore.wordfinder.bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.rkilgore.wordfinder.Dawg;
+
+/**
+ * Loading a dictionary, both by building it from the word list and by
+ * mapping the precompiled image.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class DictionaryLoadBenchmark {
+
+  @Param({"wwf.txt", "scrabble_words.txt"})
+  public String dictionary;
+
+  @Setup(Level.Trial)
+  public void setup() throws IOException {
+    this._words = Dictionaries.path(this.dictionary);
+    File image = File.createTempFile("bench", ".dawg");
+    image.deleteOnExit();
+    this._image = image.getPath();
+    Dawg.fromFile(this._words).save(this._image);
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    new File(this._image).delete();
+  }
+
+  @Benchmark
+  public Dawg fromWordList() {
+    return Dawg.fromFile(this._words);
+  }
+
+  @Benchmark
+  public Dawg openImage() throws IOException {
+    return Dawg.open(this._image);
+  }
+
+  private String _words;
+  private String _image;
+}
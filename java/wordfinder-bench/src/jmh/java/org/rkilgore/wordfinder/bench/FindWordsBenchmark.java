@@ -0,0 +1,63 @@
+package org.rkilgore.wordfinder.bench;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.rkilgore.wordfinder.FindResult;
+import org.rkilgore.wordfinder.WordFinder;
+
+/**
+ * findWords over a fixed corpus of "letters template" queries: normal and
+ * over/under modes, 0, 1 and 2 blanks, and short and long templates with
+ * letter and word multipliers.  The result cache is off so every call
+ * searches.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class FindWordsBenchmark {
+
+  @Param({
+    // ---> normal, short template
+    "retains ....",
+    "retain. ....",
+    "retai.. ....",
+    // ---> normal, long template with fixed letters and DW/TW/DL/TL
+    "aeilnst 2.#..e.!.3",
+    "aeilns. 2=.#r..+!3",
+    "aeiln.. 2.#..e.!.3",
+    // ---> over and under
+    "aeilnst o|..t.e.",
+    "aeilns. o|..t.e.",
+    "aeiln.. o|..t.e.",
+    "aeilnst u|.a..s.#",
+    "aeilns. u|.a..s.#",
+    "aeiln.. u|.a..s.#",
+  })
+  public String query;
+
+  @Setup(Level.Trial)
+  public void setup() {
+    this._wf = new WordFinder(Dictionaries.path("wwf.txt"));
+    this._wf.getCache().setMaxWords(0);
+    String[] parts = this.query.split(" ");
+    this._letters = parts[0];
+    this._template = parts[1];
+  }
+
+  @Benchmark
+  public FindResult findWords() {
+    return this._wf.findWords(this._letters, this._template);
+  }
+
+  private WordFinder _wf;
+  private String _letters;
+  private String _template;
+}
@@ -0,0 +1,65 @@
+package org.rkilgore.wordfinder.bench;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Scanner;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.rkilgore.wordfinder.TrieNode;
+
+/**
+ * TrieNode.isPrefix over a fixed set of probes: whole words, their
+ * prefixes, and near misses with the last letter changed.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class IsPrefixBenchmark {
+
+  private static final int PROBE_STRIDE = 97;
+
+  @Setup(Level.Trial)
+  public void setup() throws FileNotFoundException {
+    String path = Dictionaries.path("wwf.txt");
+    this._root = new TrieNode(path);
+    List<String> probes = new ArrayList<>();
+    try (Scanner scanner = new Scanner(new File(path))) {
+      int n = 0;
+      while (scanner.hasNextLine()) {
+        String word = scanner.nextLine().trim().toLowerCase();
+        if (word.length() < 2 || n++ % PROBE_STRIDE != 0) {
+          continue;
+        }
+        probes.add(word);
+        probes.add(word.substring(0, word.length() / 2 + 1));
+        char last = word.charAt(word.length() - 1);
+        probes.add(word.substring(0, word.length() - 1) + (char) ('a' + (last - 'a' + 13) % 26));
+      }
+    }
+    this._probes = probes.toArray(new String[0]);
+  }
+
+  @Benchmark
+  public int isPrefix() {
+    int found = 0;
+    for (String probe : this._probes) {
+      TrieNode node = this._root.isPrefix(probe);
+      if (node != null && node.isword) {
+        ++found;
+      }
+    }
+    return found;
+  }
+
+  private TrieNode _root;
+  private String[] _probes;
+}
@@ -0,0 +1,179 @@
+package org.rkilgore.wordfinder;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+
+/**
+ * The words of a Dawg grouped by signature, their letters in sorted order,
+ * for queries with no template: the words a rack can make are exactly the
+ * words whose signature is a sub-multiset of the rack.
+ *
+ * A signature of up to MAX_LENGTH letters is packed into a long, five bits
+ * per letter ('a' = 1) from the top down, so the sorted keys are in the
+ * same order as the signature strings and all the signatures that start
+ * with some letters form one contiguous range.  The rack's sub-multisets
+ * are built a letter at a time while narrowing that range, and a branch
+ * stops as soon as no signature starts with what it has chosen, which
+ * keeps blanks from expanding into thousands of dead lookups.  The words
+ * of each group are the same length and sit back to back in one char[].
+ */
+class AnagramIndex {
+
+  static final int MAX_LENGTH = 12;
+  private static final int KEY_BITS = 5 * MAX_LENGTH;
+
+  private AnagramIndex(long[] keys, int[] offsets, char[] letters) {
+    this._keys = keys;
+    this._offsets = offsets;
+    this._letters = letters;
+  }
+
+  static AnagramIndex fromDawg(Dawg dict) {
+    List<String> words = new ArrayList<>();
+    if (dict.size() > 0) {
+      addWords(dict, Dawg.ROOT, new char[MAX_LENGTH], 0, words);
+    }
+    int count = words.size();
+    long[] wordKeys = new long[count];
+    Integer[] order = new Integer[count];
+    for (int i = 0; i < count; ++i) {
+      char[] sorted = words.get(i).toCharArray();
+      Arrays.sort(sorted);
+      long key = 0;
+      for (int j = 0; j < sorted.length; ++j) {
+        key |= (long) (sorted[j] - 'a' + 1) << (KEY_BITS - 5 * (j + 1));
+      }
+      wordKeys[i] = key;
+      order[i] = i;
+    }
+    // ---> stable, so the words in each group stay in alphabetical order
+    Arrays.sort(order, (a, b) -> Long.compare(wordKeys[a], wordKeys[b]));
+
+    long[] keys = new long[count];
+    int[] offsets = new int[count + 1];
+    StringBuilder letters = new StringBuilder();
+    int groups = 0;
+    for (int i = 0; i < count; ++i) {
+      long key = wordKeys[order[i]];
+      if (groups == 0 || keys[groups - 1] != key) {
+        keys[groups] = key;
+        offsets[groups] = letters.length();
+        ++groups;
+      }
+      letters.append(words.get(order[i]));
+    }
+    offsets[groups] = letters.length();
+    char[] chars = new char[letters.length()];
+    letters.getChars(0, chars.length, chars, 0);
+    return new AnagramIndex(Arrays.copyOf(keys, groups), Arrays.copyOf(offsets, groups + 1), chars);
+  }
+
+  private static void addWords(Dawg dict, int node, char[] word, int len, List<String> words) {
+    if (len > 0 && dict.isWord(node)) {
+      words.add(new String(word, 0, len));
+    }
+    if (len == word.length) {
+      return;
+    }
+    for (int syms = dict.childMask(node); syms != 0; syms &= syms - 1) {
+      char ch = (char) ('a' + Integer.numberOfTrailingZeros(syms));
+      word[len] = ch;
+      addWords(dict, dict.child(node, ch), word, len + 1, words);
+    }
+  }
+
+  /**
+   * Records every word of at most maxLength letters that the rack can
+   * make, scored the way the template search scores a word with no
+   * template: rack letters at face value and blanks at zero.  Where a
+   * letter has to come partly from blanks, its first occurrences use the
+   * real tiles, as the template search would find them first.
+   */
+  void search(SearchContext ctx, Rack rack, int[] letterScores, int maxLength) {
+    int[] counts = new int[26];
+    for (int letter = 0; letter < 26; ++letter) {
+      counts[letter] = rack.count(letter);
+    }
+    int limit = Math.min(Math.min(maxLength, MAX_LENGTH), rack.size());
+    subsets(ctx, rack, letterScores, counts, 0, rack.blanks(), 0L, 0, limit, 0, this._keys.length, new int[26]);
+  }
+
+  /**
+   * Visits the signatures that start with key (len letters, all before
+   * letter) and can be finished from the rest of the rack.  lo and hi
+   * bound the keys that start with key; the first is key itself if it is a
+   * signature.
+   */
+  private void subsets(SearchContext ctx, Rack rack, int[] letterScores, int[] counts, int letter,
+                       int blanks, long key, int len, int limit, int lo, int hi, int[] real) {
+    if (len > 0 && this._keys[lo] == key) {
+      lookup(ctx, rack, letterScores, counts, lo, len, real);
+    }
+    if (len == limit) {
+      return;
+    }
+    for (; letter < 26; ++letter) {
+      // ---> take this letter n more times, from the rack's tiles first and then from blanks
+      int max = Math.min(counts[letter] + blanks, limit - len);
+      long next = key;
+      int nextLo = lo;
+      int nextHi = hi;
+      for (int n = 1; n <= max; ++n) {
+        int shift = KEY_BITS - 5 * (len + n);
+        next |= (long) (letter + 1) << shift;
+        nextLo = lowerBound(nextLo, nextHi, next);
+        nextHi = lowerBound(nextLo, nextHi, next + (1L << shift));
+        if (nextLo == nextHi) {
+          break;
+        }
+        int fromBlanks = Math.max(0, n - counts[letter]);
+        subsets(ctx, rack, letterScores, counts, letter + 1, blanks - fromBlanks, next, len + n, limit,
+                nextLo, nextHi, real);
+      }
+    }
+  }
+
+  private int lowerBound(int lo, int hi, long key) {
+    while (lo < hi) {
+      int mid = (lo + hi) >>> 1;
+      if (this._keys[mid] < key) {
+        lo = mid + 1;
+      } else {
+        hi = mid;
+      }
+    }
+    return lo;
+  }
+
+  private void lookup(SearchContext ctx, Rack rack, int[] letterScores, int[] counts, int group, int len,
+                      int[] real) {
+    for (int offset = this._offsets[group]; offset < this._offsets[group + 1]; offset += len) {
+      Arrays.fill(real, 0);
+      int score = 0;
+      int dotsLen = 0;
+      for (int i = 0; i < len; ++i) {
+        char ch = this._letters[offset + i];
+        ctx.word[i] = ch;
+        if (real[ch - 'a'] < counts[ch - 'a']) {
+          ++real[ch - 'a'];
+          score += letterScores[ch - 'a'];
+        } else {
+          ctx.dots[dotsLen++] = ch;
+        }
+      }
+      if (rack.hasRequiredLetters(ctx.word, len)) {
+        WordFinder.addWord(ctx, len, len, dotsLen, -1, 0, score, 0, 1);
+      }
+    }
+  }
+
+  int size() {
+    return this._keys.length;
+  }
+
+  private final long[] _keys;
+  private final int[] _offsets;
+  private final char[] _letters;
+}
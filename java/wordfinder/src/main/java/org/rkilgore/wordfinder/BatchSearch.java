@@ -0,0 +1,401 @@
+package org.rkilgore.wordfinder;
+
+import java.util.Arrays;
+import java.util.List;
+import org.rkilgore.wordfinder.WordFinder.Tile;
+
+
+/**
+ * NORMAL mode searches of one rack against many templates, made in a
+ * single walk of the Dawg.
+ *
+ * Every template's search walks the same graph from the root, and a word
+ * is just a path through it, so the walk is shared: each path is visited
+ * once and carries the set of template searches that can still use it.
+ * Each of those is a State with its own position in its template, prefix
+ * and postfix lengths, score and blanks.  A letter is tried only if some
+ * State can take it, and a path is dropped once no State is left on it.
+ *
+ * The rack is shared too.  What a State has used of it is worked out from
+ * the path: every letter on the path came from the rack unless it was a
+ * fixed template letter or a blank.  States follow the same rules, record
+ * words through the same SearchContext.addWord and prune on the same
+ * conditions as WordFinder.recurseNormal, so each template gets the words
+ * and scores it would get from findWords.
+ */
+class BatchSearch {
+
+  /** One template's search with what it needs to share the walk. */
+  private static class Template {
+    Template(SearchContext ctx) {
+      this.ctx = ctx;
+      int n = ctx.tiles.length;
+      this.fixedCount = new int[n + 1][];
+      this.fixedTotal = new int[n + 1];
+      this.fixedMask = new int[n + 1];
+      this.fixedCount[0] = new int[26];
+      for (int i = 0; i < n; ++i) {
+        Tile tile = ctx.tiles[i];
+        this.fixedCount[i + 1] = this.fixedCount[i].clone();
+        this.fixedTotal[i + 1] = this.fixedTotal[i];
+        this.fixedMask[i + 1] = this.fixedMask[i];
+        if (!tile.open && !tile.hasLetter()) {
+          // ---> a closed tile with no letter ([:@]): nothing can go here
+          this.matchesNothing = true;
+        } else if (!tile.open) {
+          ++this.fixedCount[i + 1][tile.letter - 'a'];
+          ++this.fixedTotal[i + 1];
+          this.fixedMask[i + 1] |= 1 << (tile.letter - 'a');
+        }
+      }
+    }
+
+    final SearchContext ctx;
+    /** No word can cover the template, so it never joins the walk. */
+    boolean matchesNothing;
+    /** Per letter, how many fixed template letters come before each position. */
+    final int[][] fixedCount;
+    /** How many fixed template letters come before each position. */
+    final int[] fixedTotal;
+    /** Which letters are fixed template letters before each position. */
+    final int[] fixedMask;
+  }
+
+  /**
+   * Where one template's search is on the current path.  States are pooled
+   * per depth and refilled in place, so the walk allocates nothing once the
+   * pools have grown.
+   */
+  private static class State {
+    void set(Template template, int tpos, int prefixLen, int postfixLen, int score, int wordMult,
+             String dots, int dotsMask) {
+      this.template = template;
+      this.tpos = tpos;
+      this.prefixLen = prefixLen;
+      this.postfixLen = postfixLen;
+      this.score = score;
+      this.wordMult = wordMult;
+      this.dots = dots;
+      this.dotsMask = dotsMask;
+    }
+
+    Template template;
+    int tpos;
+    int prefixLen;
+    int postfixLen;
+    int score;
+    int wordMult;
+    String dots;
+    /** Which letters the blanks in dots stand for. */
+    int dotsMask;
+  }
+
+  /** A growable array of pooled States. */
+  private static class States {
+    State push() {
+      if (this.size == this.items.length) {
+        this.items = Arrays.copyOf(this.items, this.size * 2);
+      }
+      State s = this.items[this.size];
+      if (s == null) {
+        s = this.items[this.size] = new State();
+      }
+      ++this.size;
+      return s;
+    }
+
+    State[] items = new State[16];
+    int size;
+  }
+
+  BatchSearch(Dawg dict, Rack rack, List<SearchContext> contexts) {
+    this._dict = dict;
+    this._rack = rack;
+    int longest = 0;
+    for (SearchContext ctx : contexts) {
+      longest = Math.max(longest, ctx.word.length);
+    }
+    this._path = new char[longest];
+    this._pathCounts = new int[26];
+    // ---> the States at each depth, and the ones still live there
+    this._states = new States[longest + 1];
+    this._live = new State[longest + 1][];
+    this._masks = new int[longest + 1][];
+    for (int i = 0; i <= longest; ++i) {
+      this._states[i] = new States();
+      this._live[i] = new State[16];
+      this._masks[i] = new int[16];
+    }
+    for (SearchContext ctx : contexts) {
+      Template template = new Template(ctx);
+      if (!template.matchesNothing) {
+        this._states[0].push().set(template, 0, 0, 0, 0, 1, "", 0);
+      }
+    }
+  }
+
+  void search() {
+    this._rackMask = this._rack.letterMask();
+    this._pathMask = 0;
+    visit(Dawg.ROOT, 0);
+  }
+
+  private void visit(int node, int len) {
+    States states = this._states[len];
+    if (this._live[len].length < states.size) {
+      this._live[len] = new State[states.items.length];
+      this._masks[len] = new int[states.items.length];
+    }
+    State[] live = this._live[len];
+    int[] masks = this._masks[len];
+    int liveCount = 0;
+    int wanted = 0;
+    // ---> read once for every State here
+    int reachable = this._dict.reachableLetters(node);
+    int minRemaining = this._dict.minRemaining(node);
+    int maxRemaining = this._dict.maxRemaining(node);
+    for (int i = 0; i < states.size; ++i) {
+      State s = states.items[i];
+      SearchContext ctx = s.template.ctx;
+      if (ctx.stats != null) {
+        ++ctx.stats.nodesExpanded;
+      }
+      if (isFinished(s, len)) {
+        if (ctx.stats != null) {
+          ++ctx.stats.prunedTerminate;
+        }
+        continue;
+      }
+      if (isDeadSubtree(s, len, reachable, minRemaining, maxRemaining)) {
+        if (ctx.stats != null) {
+          ++ctx.stats.prunedSubtree;
+        }
+        continue;
+      }
+      int letters = nextLetters(s, len);
+      if (letters != 0) {
+        live[liveCount] = s;
+        masks[liveCount++] = letters;
+        wanted |= letters;
+      }
+    }
+
+    int rackMask = this._rackMask;
+    int pathMask = this._pathMask;
+    for (int syms = wanted & this._dict.childMask(node); syms != 0; syms &= syms - 1) {
+      char ch = (char) ('a' + Integer.numberOfTrailingZeros(syms));
+      int next = this._dict.child(node, ch);
+      boolean isWord = this._dict.isWord(next);
+      this._path[len] = ch;
+      States nextStates = this._states[len + 1];
+      nextStates.size = 0;
+      this._word = null;
+      int bit = 1 << (ch - 'a');
+      for (int i = 0; i < liveCount; ++i) {
+        if ((masks[i] & bit) != 0) {
+          advance(live[i], ch, len, isWord, nextStates);
+        }
+      }
+      if (nextStates.size > 0) {
+        int letter = ch - 'a';
+        if (++this._pathCounts[letter] >= this._rack.count(letter)) {
+          this._rackMask &= ~(1 << letter);
+        }
+        this._pathMask |= 1 << letter;
+        visit(next, len + 1);
+        --this._pathCounts[letter];
+        this._rackMask = rackMask;
+        this._pathMask = pathMask;
+      }
+    }
+  }
+
+  private int rackLeft(State s, int len) {
+    return this._rack.size() - (len - s.template.fixedTotal[s.tpos]);
+  }
+
+  private int blanksLeft(State s) {
+    return this._rack.blanks() - s.dots.length();
+  }
+
+  /**
+   * Whether the State still has letter in the rack: the rack's count, less
+   * the path's, plus those on the path that were fixed template letters or
+   * blanks.
+   */
+  private boolean available(State s, int letter) {
+    int bit = 1 << letter;
+    if ((this._rackMask & bit) != 0) {
+      return true;
+    }
+    if (((s.template.fixedMask[s.tpos] | s.dotsMask) & bit) == 0) {
+      return false;
+    }
+    int fromBlanks = 0;
+    for (int i = 0; i < s.dots.length(); ++i) {
+      if (s.dots.charAt(i) - 'a' == letter) {
+        ++fromBlanks;
+      }
+    }
+    return this._rack.count(letter) - this._pathCounts[letter]
+        + s.template.fixedCount[s.tpos][letter] + fromBlanks > 0;
+  }
+
+  private int rackLetters(State s) {
+    if (blanksLeft(s) > 0) {
+      return SearchContext.ALL_LETTERS;
+    }
+    int mask = this._rackMask;
+    int borrowed = (s.template.fixedMask[s.tpos] | s.dotsMask) & this._rack.letterMask() & ~mask;
+    for (int syms = borrowed; syms != 0; syms &= syms - 1) {
+      int letter = Integer.numberOfTrailingZeros(syms);
+      if (available(s, letter)) {
+        mask |= 1 << letter;
+      }
+    }
+    return mask;
+  }
+
+  private boolean canAddPrefix(State s, int len) {
+    SearchContext ctx = s.template.ctx;
+    return s.tpos == 0 && ctx.tiles.length > 0 && s.prefixLen < ctx.maxPrefix
+        && rackLeft(s, len) > ctx.openTilesFrom[0];
+  }
+
+  /**
+   * Same as WordFinder.shouldTerminate: no letters left and no fixed
+   * template letter next, or the template and the postfix are used up.
+   */
+  private boolean isFinished(State s, int len) {
+    SearchContext ctx = s.template.ctx;
+    boolean templateEmpty = s.tpos == ctx.tiles.length;
+    boolean nextIsTemplateLetter = !templateEmpty && !ctx.tiles[s.tpos].open;
+    return (rackLeft(s, len) == 0 && !nextIsTemplateLetter)
+        || (templateEmpty && s.postfixLen == ctx.maxPostfix);
+  }
+
+  /**
+   * Same as WordFinder.isDeadSubtree, for a State.
+   */
+  private boolean isDeadSubtree(State s, int len, int reachable, int minRemaining, int maxRemaining) {
+    SearchContext ctx = s.template.ctx;
+    int needed = ctx.lettersFrom[s.tpos] | (this._rack.requiredMask & ~this._pathMask);
+    if ((needed & ~reachable) != 0) {
+      return true;
+    }
+    int templateLeft = ctx.tiles.length - s.tpos;
+    if (maxRemaining < templateLeft) {
+      return true;
+    }
+    int prefixRoom = s.tpos == 0 && ctx.tiles.length > 0 ? ctx.maxPrefix - s.prefixLen : 0;
+    int rackRoom = ctx.openTilesFrom[s.tpos] + prefixRoom + ctx.maxPostfix - s.postfixLen;
+    int longest = templateLeft - ctx.openTilesFrom[s.tpos] + Math.min(rackLeft(s, len), rackRoom);
+    return minRemaining > longest;
+  }
+
+  /**
+   * The letters the State could put next, before checking the Dawg.
+   */
+  private int nextLetters(State s, int len) {
+    SearchContext ctx = s.template.ctx;
+    int mask = canAddPrefix(s, len) ? rackLetters(s) : 0;
+    if (s.tpos < ctx.tiles.length) {
+      Tile tile = ctx.tiles[s.tpos];
+      if (tile.open && !tile.hasLetter()) {
+        mask |= rackLetters(s);
+      } else if (!tile.open || available(s, tile.letter - 'a')) {
+        mask |= 1 << (tile.letter - 'a');
+      }
+    } else if (s.postfixLen < ctx.maxPostfix) {
+      mask |= rackLetters(s);
+    }
+    return mask;
+  }
+
+  /**
+   * Adds to nextStates every way the State can put ch at position len,
+   * recording a word for each one that completes the template on a word.
+   */
+  private void advance(State s, char ch, int len, boolean isWord, States nextStates) {
+    SearchContext ctx = s.template.ctx;
+    int letter = ch - 'a';
+    int value = ctx.letterScores[letter];
+    boolean real = available(s, letter);
+    boolean blank = blanksLeft(s) > 0;
+    String blankDots = blank ? s.dots + ch : null;
+    int blankMask = s.dotsMask | 1 << letter;
+
+    if (canAddPrefix(s, len)) {
+      if (real) {
+        add(s.template, 0, s.prefixLen + 1, 0, s.score + value, s.wordMult, s.dots, s.dotsMask,
+            len, isWord, nextStates);
+      }
+      if (blank) {
+        add(s.template, 0, s.prefixLen + 1, 0, s.score, s.wordMult, blankDots, blankMask,
+            len, isWord, nextStates);
+      }
+    }
+
+    int n = ctx.tiles.length;
+    if (s.tpos < n) {
+      Tile tile = ctx.tiles[s.tpos];
+      int wordMult = s.wordMult * tile.wordMult;
+      if (tile.open && !tile.hasLetter()) {
+        if (real) {
+          add(s.template, s.tpos + 1, s.prefixLen, 0, s.score + value * tile.letterMult, wordMult, s.dots, s.dotsMask,
+              len, isWord, nextStates);
+        }
+        if (blank) {
+          add(s.template, s.tpos + 1, s.prefixLen, 0, s.score, wordMult, blankDots, blankMask,
+              len, isWord, nextStates);
+        }
+      } else if (tile.letter == ch && (!tile.open || real)) {
+        int score = s.score + (tile.isZeroLetter ? 0 : value * tile.letterMult);
+        add(s.template, s.tpos + 1, s.prefixLen, 0, score, wordMult, s.dots, s.dotsMask,
+            len, isWord, nextStates);
+      }
+    } else if (s.postfixLen < ctx.maxPostfix) {
+      if (real) {
+        add(s.template, n, s.prefixLen, s.postfixLen + 1, s.score + value, s.wordMult, s.dots, s.dotsMask,
+            len, isWord, nextStates);
+      }
+      if (blank) {
+        add(s.template, n, s.prefixLen, s.postfixLen + 1, s.score, s.wordMult, blankDots, blankMask,
+            len, isWord, nextStates);
+      }
+    }
+  }
+
+  private void add(Template template, int tpos, int prefixLen, int postfixLen, int score, int wordMult,
+                   String dots, int dotsMask, int len, boolean isWord, States nextStates) {
+    SearchContext ctx = template.ctx;
+    int wordLen = len + 1;
+    if (isWord && tpos == ctx.tiles.length) {
+      if (this._rack.hasRequiredLetters(this._path, wordLen)) {
+        // ---> every template that ends a word here shares one String
+        if (this._word == null) {
+          this._word = new String(this._path, 0, wordLen);
+        }
+        System.arraycopy(this._path, 0, ctx.word, 0, wordLen);
+        dots.getChars(0, dots.length(), ctx.dots, 0);
+        WordFinder.addWord(ctx, this._word, len, wordLen, dots.length(), -1, 0, score, 0, wordMult);
+      }
+    }
+    nextStates.push().set(template, tpos, prefixLen, postfixLen, score, wordMult, dots, dotsMask);
+  }
+
+  private final Dawg _dict;
+  private final Rack _rack;
+  private final char[] _path;
+  private final int[] _pathCounts;
+  private final States[] _states;
+  private final State[][] _live;
+  /** For each live State, the letters it could put next. */
+  private final int[][] _masks;
+  /** Letters the rack still has after the letters on the current path. */
+  private int _rackMask;
+  /** Letters on the current path. */
+  private int _pathMask;
+  /** The current path as a String, once some State has recorded it. */
+  private String _word;
+}
@@ -0,0 +1,106 @@
+package org.rkilgore.wordfinder;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.rkilgore.wordfinder.WordFinder.Tile;
+
+
+/**
+ * A game board: one Tile per square, using the template tiles.  An empty
+ * square is an open tile (OPEN, DLETTER, TLETTER, DWORD or TWORD) and a
+ * square holding a played letter is a letter tile, zero-scoring if it was
+ * played from a blank.
+ */
+public class Board {
+
+  public static final int SIZE = 15;
+
+  private Board(Tile[][] squares) {
+    this._squares = squares;
+  }
+
+  /**
+   * Parses a board from one string per row, written in template syntax:
+   * '.' for an empty square, [= + # !] for DL, TL, DW and TW squares, and a
+   * letter for a tile already played.  A letter followed by ":0" was played
+   * from a blank.  All rows must be the same length.
+   */
+  public static Board parse(List<String> rows) {
+    if (rows.isEmpty()) {
+      throw new IllegalArgumentException("empty board");
+    }
+    List<Tile[]> parsed = new ArrayList<>();
+    for (String row : rows) {
+      List<Tile> tiles = new ArrayList<>();
+      boolean modifier = false;
+      for (char ch : row.trim().toCharArray()) {
+        if (ch == ':') {
+          modifier = true;
+        } else if (modifier) {
+          if (ch != '0' || tiles.isEmpty() || tiles.get(tiles.size() - 1).open) {
+            throw new IllegalArgumentException(String.format("Unrecognized board mod ':%c' in row: %s", ch, row));
+          }
+          tiles.get(tiles.size() - 1).isZeroLetter = true;
+          modifier = false;
+        } else if (ch == '.') {
+          tiles.add(Tile.OPEN);
+        } else if (ch == '=') {
+          tiles.add(Tile.DLETTER);
+        } else if (ch == '+') {
+          tiles.add(Tile.TLETTER);
+        } else if (ch == '#') {
+          tiles.add(Tile.DWORD);
+        } else if (ch == '!') {
+          tiles.add(Tile.TWORD);
+        } else if ((ch >= 'a' && ch <= 'z') || (ch >= 'A' && ch <= 'Z')) {
+          tiles.add(Tile.forLetter(Character.toLowerCase(ch)));
+        } else {
+          throw new IllegalArgumentException(String.format("Unrecognized character in board row: '%c'", ch));
+        }
+      }
+      if (!parsed.isEmpty() && tiles.size() != parsed.get(0).length) {
+        throw new IllegalArgumentException(String.format("Board row has %d squares, expected %d: %s",
+                                                         tiles.size(), parsed.get(0).length, row));
+      }
+      parsed.add(tiles.toArray(new Tile[0]));
+    }
+    return new Board(parsed.toArray(new Tile[0][]));
+  }
+
+  public int rows() {
+    return this._squares.length;
+  }
+
+  public int cols() {
+    return this._squares[0].length;
+  }
+
+  /**
+   * The letter played on a square, or 0 if it is empty.
+   */
+  public char letter(int row, int col) {
+    Tile tile = this._squares[row][col];
+    return tile.open ? 0 : tile.letter;
+  }
+
+  public boolean isBlank(int row, int col) {
+    return this._squares[row][col].isZeroLetter;
+  }
+
+  public boolean isEmpty() {
+    for (Tile[] row : this._squares) {
+      for (Tile tile : row) {
+        if (!tile.open) {
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+
+  Tile square(int row, int col) {
+    return this._squares[row][col];
+  }
+
+  private final Tile[][] _squares;
+}
@@ -0,0 +1,519 @@
+package org.rkilgore.wordfinder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Scanner;
+import java.util.TreeMap;
+
+
+/**
+ * A minimized DAWG (directed acyclic word graph) stored in a flat int buffer.
+ *
+ * Nodes are addressed by index, with the root at index 0.  Every node has a
+ * child bitmask (bit 0 = 'a' ... bit 25 = 'z') that also carries the word
+ * bit, and the index of its first child.  The children of a node sit next
+ * to each other in letter order, so the child for a letter is found with a
+ * popcount instead of a map lookup.
+ *
+ * Each node also records facts about every word that can be finished from
+ * it, so a search can give up on a node without walking under it: the
+ * letters that appear anywhere below it, and the fewest and most letters
+ * still needed to end a word.
+ *
+ * One Dawg can hold several word lists at once (see {@link #union}): a node
+ * that ends a word also records which lists the word is in, as a bitmask
+ * (bit 0 = the first list).  {@link #select} gives a view of the same nodes
+ * in which only the words of chosen lists are words.  The other node facts
+ * cover the union, so they stay safe bounds for any view.
+ *
+ * The node buffer is either built in memory from a word list or mapped
+ * straight from a precompiled image written by {@link #save}:
+ *
+ *   int magic, int version, int nodeCount, int stride, then nodeCount * stride
+ *   node ints, all little-endian.
+ */
+public class Dawg {
+
+  public static final int ROOT = 0;
+  public static final int NONE = -1;
+
+  static final int WORD_BIT = 1 << 27;
+  static final int CHILD_BITS = (1 << 26) - 1;
+
+  static final int MASK = 0;
+  static final int FIRST_CHILD = 1;
+  static final int REACHABLE = 2;
+  static final int LENGTHS = 3;
+  static final int STRIDE = 4;
+
+  static final int MAX_REMAINING = 0xff;
+  static final int MEMBERS_SHIFT = 16;
+  public static final int MAX_LISTS = 16;
+
+  static final int MAGIC = 0xda7c0de1;
+  static final int VERSION = 3;
+  private static final int HEADER_BYTES = 16;
+
+  Dawg(IntBuffer nodes) {
+    this(nodes, 0, 0);
+  }
+
+  private Dawg(IntBuffer nodes, int anyOf, int allOf) {
+    this._nodes = nodes;
+    this._anyOf = anyOf;
+    this._allOf = allOf;
+    this._size = nodes.limit() / STRIDE;
+    this._followers = new int[26];
+    this._leaders = new int[26];
+    if (this._size > 0) {
+      for (int first = 0; first < 26; ++first) {
+        int node = child(ROOT, (char) ('a' + first));
+        if (node == NONE) {
+          continue;
+        }
+        for (int second = 0; second < 26; ++second) {
+          int word = child(node, (char) ('a' + second));
+          if (word != NONE && isWord(word)) {
+            this._followers[first] |= 1 << second;
+            this._leaders[second] |= 1 << first;
+          }
+        }
+      }
+    }
+  }
+
+  public static Dawg fromScanner(Scanner scanner) {
+    List<String> words = new ArrayList<>();
+    try {
+      while (scanner.hasNextLine()) {
+        String word = scanner.nextLine().trim().toLowerCase();
+        if (isLetters(word)) {
+          words.add(word);
+        }
+      }
+    } catch (Exception e) {
+      e.printStackTrace();
+    }
+    Collections.sort(words);
+    DawgBuilder builder = new DawgBuilder();
+    String prev = null;
+    for (String word : words) {
+      if (!word.equals(prev)) {
+        builder.add(word);
+      }
+      prev = word;
+    }
+    return builder.build();
+  }
+
+  /**
+   * One Dawg holding the words of every dict, each word marked with the
+   * lists it is in: bit i for dicts.get(i).  Nodes are shared wherever the
+   * lists agree, so overlapping lists cost little more than one.
+   */
+  public static Dawg union(List<Dawg> dicts) {
+    if (dicts.size() > MAX_LISTS) {
+      throw new IllegalArgumentException(String.format("at most %d word lists can be combined", MAX_LISTS));
+    }
+    List<List<String>> lists = new ArrayList<>();
+    for (Dawg dict : dicts) {
+      lists.add(dict.words());
+    }
+    DawgBuilder builder = new DawgBuilder();
+    int[] next = new int[lists.size()];
+    while (true) {
+      // ---> merge the sorted lists, collecting the lists each word is in
+      String word = null;
+      for (int i = 0; i < lists.size(); ++i) {
+        if (next[i] < lists.get(i).size()) {
+          String w = lists.get(i).get(next[i]);
+          if (word == null || w.compareTo(word) < 0) {
+            word = w;
+          }
+        }
+      }
+      if (word == null) {
+        break;
+      }
+      int members = 0;
+      for (int i = 0; i < lists.size(); ++i) {
+        if (next[i] < lists.get(i).size() && lists.get(i).get(next[i]).equals(word)) {
+          members |= 1 << i;
+          ++next[i];
+        }
+      }
+      builder.add(word, members);
+    }
+    return builder.build();
+  }
+
+  /**
+   * A view of the same nodes in which a word counts only if it is in at
+   * least one of the lists in anyOf (any list, if anyOf is 0) and in every
+   * list in allOf.  Views are cheap: nothing is copied.
+   */
+  public Dawg select(int anyOf, int allOf) {
+    return new Dawg(this._nodes, anyOf, allOf);
+  }
+
+  /**
+   * Every word in this Dawg (or view), in sorted order.
+   */
+  List<String> words() {
+    List<String> words = new ArrayList<>();
+    if (this._size > 0) {
+      addWords(ROOT, new StringBuilder(), words);
+    }
+    return words;
+  }
+
+  private void addWords(int node, StringBuilder sb, List<String> words) {
+    if (sb.length() > 0 && isWord(node)) {
+      words.add(sb.toString());
+    }
+    for (int syms = childMask(node); syms != 0; syms &= syms - 1) {
+      char ch = (char) ('a' + Integer.numberOfTrailingZeros(syms));
+      sb.append(ch);
+      addWords(child(node, ch), sb, words);
+      sb.setLength(sb.length() - 1);
+    }
+  }
+
+  /**
+   * A new Dawg with adds added to and removes removed from the lists this
+   * view selects (list 0 if it selects none; every list, for removes), as
+   * a view with the same selection.  A word left in no list is dropped.
+   * Words are lowercased; anything else that isn't a-z throws
+   * IllegalArgumentException.  This Dawg is not changed.
+   */
+  public Dawg withChanges(Collection<String> adds, Collection<String> removes) {
+    int lists = this._anyOf | this._allOf;
+    TreeMap<String, Integer> changes = new TreeMap<>();
+    for (String word : removes) {
+      changes.merge(checkedWord(word), 0, (x, y) -> x);
+    }
+    for (String word : adds) {
+      changes.put(checkedWord(word), lists != 0 ? lists : 1);
+    }
+    int cleared = lists != 0 ? lists : ~0;
+
+    List<String> words = new ArrayList<>();
+    List<Integer> members = new ArrayList<>();
+    if (this._size > 0) {
+      addEntries(ROOT, new StringBuilder(), words, members);
+    }
+    DawgBuilder builder = new DawgBuilder();
+    int next = 0;
+    for (Map.Entry<String, Integer> change : changes.entrySet()) {
+      String word = change.getKey();
+      for (; next < words.size() && words.get(next).compareTo(word) < 0; ++next) {
+        builder.add(words.get(next), members.get(next));
+      }
+      int had = 0;
+      if (next < words.size() && words.get(next).equals(word)) {
+        had = members.get(next++);
+      }
+      // ---> a word both added and removed ends up added
+      int now = change.getValue() != 0 ? had | change.getValue() : had & ~cleared;
+      if (now != 0) {
+        builder.add(word, now);
+      }
+    }
+    for (; next < words.size(); ++next) {
+      builder.add(words.get(next), members.get(next));
+    }
+    return builder.build().select(this._anyOf, this._allOf);
+  }
+
+  /**
+   * Every word in any list, with the lists it is in, in sorted order.
+   */
+  private void addEntries(int node, StringBuilder sb, List<String> words, List<Integer> members) {
+    if (sb.length() > 0 && members(node) != 0) {
+      words.add(sb.toString());
+      members.add(members(node));
+    }
+    for (int syms = childMask(node); syms != 0; syms &= syms - 1) {
+      char ch = (char) ('a' + Integer.numberOfTrailingZeros(syms));
+      sb.append(ch);
+      addEntries(child(node, ch), sb, words, members);
+      sb.setLength(sb.length() - 1);
+    }
+  }
+
+  private static String checkedWord(String word) {
+    String lower = word.trim().toLowerCase(Locale.ROOT);
+    if (!isLetters(lower)) {
+      throw new IllegalArgumentException("not a word: '" + word + "'");
+    }
+    return lower;
+  }
+
+  public static Dawg fromFile(String dictFilename) {
+    try (Scanner scanner = new Scanner(new File(dictFilename))) {
+      return fromScanner(scanner);
+    } catch (Exception e) {
+      e.printStackTrace();
+      return new DawgBuilder().build();
+    }
+  }
+
+  /**
+   * Loads a dictionary from either a precompiled image or a word list,
+   * depending on whether the file starts with the image magic number.
+   */
+  public static Dawg load(String dictFilename) {
+    boolean image;
+    try {
+      image = isImage(dictFilename);
+    } catch (IOException e) {
+      // ---> can't be read: let fromFile report it
+      image = false;
+    }
+    if (!image) {
+      return fromFile(dictFilename);
+    }
+    try {
+      return open(dictFilename);
+    } catch (IOException e) {
+      // ---> most likely an image from an older version: use its word list if it's there
+      String words = wordListFor(dictFilename);
+      if (words == null) {
+        throw new IllegalArgumentException(
+            String.format("%s: %s (rebuild it with DawgCompiler)", dictFilename, e.getMessage()), e);
+      }
+      System.err.printf("%s: %s; loading %s instead%n", dictFilename, e.getMessage(), words);
+      return fromFile(words);
+    }
+  }
+
+  /**
+   * The word list an image x.dawg was probably compiled from, x.txt or x,
+   * or null if neither is there.
+   */
+  private static String wordListFor(String imageFilename) {
+    if (!imageFilename.endsWith(".dawg")) {
+      return null;
+    }
+    String base = imageFilename.substring(0, imageFilename.length() - ".dawg".length());
+    for (String candidate : new String[] {base + ".txt", base}) {
+      File file = new File(candidate);
+      if (file.isFile() && file.canRead()) {
+        return candidate;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Loads one dictionary, or the union of several (see {@link #union}) in
+   * the order given.
+   */
+  public static Dawg load(List<String> dictFilenames) {
+    if (dictFilenames.size() == 1) {
+      return load(dictFilenames.get(0));
+    }
+    List<Dawg> dicts = new ArrayList<>();
+    for (String dictFilename : dictFilenames) {
+      dicts.add(load(dictFilename));
+    }
+    return union(dicts);
+  }
+
+  /**
+   * Maps a precompiled image into memory.  Nothing is parsed or copied: the
+   * nodes are read directly out of the mapped file.
+   */
+  public static Dawg open(String imageFilename) throws IOException {
+    try (RandomAccessFile file = new RandomAccessFile(imageFilename, "r")) {
+      FileChannel channel = file.getChannel();
+      return open(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+    }
+  }
+
+  /**
+   * Reads the nodes directly out of an image that is already in memory or
+   * mapped, such as an uncompressed Android asset mapped through its file
+   * descriptor.  The buffer's header must be at index 0.
+   */
+  public static Dawg open(ByteBuffer image) throws IOException {
+    image.order(ByteOrder.LITTLE_ENDIAN);
+    if (image.remaining() < HEADER_BYTES || image.getInt(0) != MAGIC) {
+      throw new IOException("not a dictionary image");
+    }
+    int version = image.getInt(4);
+    if (version != VERSION) {
+      throw new IOException(String.format("unsupported dictionary image version %d (expected %d)", version, VERSION));
+    }
+    int nodeCount = image.getInt(8);
+    int stride = image.getInt(12);
+    if (stride != STRIDE || image.remaining() < HEADER_BYTES + 4L * nodeCount * stride) {
+      throw new IOException("corrupt dictionary image");
+    }
+    ((Buffer) image).position(HEADER_BYTES);
+    IntBuffer nodes = image.slice().order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+    ((Buffer) nodes).limit(nodeCount * stride);
+    return new Dawg(nodes);
+  }
+
+  public void save(String imageFilename) throws IOException {
+    int ints = this._size * STRIDE;
+    ByteBuffer image = ByteBuffer.allocate(HEADER_BYTES + 4 * ints).order(ByteOrder.LITTLE_ENDIAN);
+    image.putInt(MAGIC).putInt(VERSION).putInt(this._size).putInt(STRIDE);
+    for (int i = 0; i < ints; ++i) {
+      image.putInt(this._nodes.get(i));
+    }
+    ((Buffer) image).flip();
+    try (FileOutputStream out = new FileOutputStream(imageFilename)) {
+      FileChannel channel = out.getChannel();
+      while (image.hasRemaining()) {
+        channel.write(image);
+      }
+    }
+  }
+
+  private static boolean isImage(String filename) throws IOException {
+    try (RandomAccessFile file = new RandomAccessFile(filename, "r")) {
+      if (file.length() < HEADER_BYTES) {
+        return false;
+      }
+      return Integer.reverseBytes(file.readInt()) == MAGIC;
+    }
+  }
+
+  private static boolean isLetters(String word) {
+    if (word.isEmpty()) {
+      return false;
+    }
+    for (int i = 0; i < word.length(); ++i) {
+      char ch = word.charAt(i);
+      if (ch < 'a' || ch > 'z') {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  public int child(int node, char ch) {
+    int sym = ch - 'a';
+    // ---> symbol 26 is only ever set in a Gaddag, for its separator
+    if (sym < 0 || sym > 26) {
+      return NONE;
+    }
+    int base = node * STRIDE;
+    int mask = this._nodes.get(base + MASK);
+    int bit = 1 << sym;
+    if ((mask & bit) == 0) {
+      return NONE;
+    }
+    return this._nodes.get(base + FIRST_CHILD) + Integer.bitCount(mask & (bit - 1));
+  }
+
+  /**
+   * Bitmask of the letters that have a child under node (bit 0 = 'a').
+   * Iterate it to visit only the children that exist.
+   */
+  public int childMask(int node) {
+    return this._nodes.get(node * STRIDE + MASK) & CHILD_BITS;
+  }
+
+  public int isPrefix(String prefix) {
+    return isPrefix(ROOT, prefix);
+  }
+
+  public int isPrefix(int node, String prefix) {
+    for (char ch : prefix.toLowerCase().toCharArray()) {
+      node = child(node, ch);
+      if (node == NONE) {
+        return NONE;
+      }
+    }
+    return node;
+  }
+
+  public boolean isWord(int node) {
+    int base = node * STRIDE;
+    if ((this._nodes.get(base + MASK) & WORD_BIT) == 0) {
+      return false;
+    }
+    if ((this._anyOf | this._allOf) == 0) {
+      return true;
+    }
+    int members = this._nodes.get(base + LENGTHS) >>> MEMBERS_SHIFT;
+    return (this._anyOf == 0 || (members & this._anyOf) != 0) && (members & this._allOf) == this._allOf;
+  }
+
+  /**
+   * Bitmask of the word lists that have the word ending at node, or 0 if
+   * none does.  A Dawg built from a single list marks every word as in
+   * list 0.
+   */
+  public int members(int node) {
+    int base = node * STRIDE;
+    if ((this._nodes.get(base + MASK) & WORD_BIT) == 0) {
+      return 0;
+    }
+    return this._nodes.get(base + LENGTHS) >>> MEMBERS_SHIFT;
+  }
+
+  /**
+   * Bitmask of the letters that make a two-letter word after first.
+   */
+  public int followers(char first) {
+    return this._followers[first - 'a'];
+  }
+
+  /**
+   * Bitmask of the letters that make a two-letter word before second.
+   */
+  public int leaders(char second) {
+    return this._leaders[second - 'a'];
+  }
+
+  /**
+   * Bitmask of the letters that appear in some word finished from node,
+   * after the letters that lead to it.
+   */
+  public int reachableLetters(int node) {
+    return this._nodes.get(node * STRIDE + REACHABLE);
+  }
+
+  /**
+   * The fewest letters that have to follow node to end a word: 0 if node
+   * ends a word itself.
+   */
+  public int minRemaining(int node) {
+    return this._nodes.get(node * STRIDE + LENGTHS) & MAX_REMAINING;
+  }
+
+  /**
+   * The most letters that can follow node and still end a word.
+   */
+  public int maxRemaining(int node) {
+    return (this._nodes.get(node * STRIDE + LENGTHS) >>> 8) & MAX_REMAINING;
+  }
+
+  public int size() {
+    return this._size;
+  }
+
+  private final IntBuffer _nodes;
+  private final int _anyOf;
+  private final int _allOf;
+  private final int _size;
+  private final int[] _followers;
+  private final int[] _leaders;
+}
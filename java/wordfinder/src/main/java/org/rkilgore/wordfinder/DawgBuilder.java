@@ -0,0 +1,206 @@
+package org.rkilgore.wordfinder;
+
+import java.nio.IntBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+
+/**
+ * Builds a minimized {@link Dawg} from words added in sorted order, using
+ * Daciuk's incremental algorithm: once a word has been added, every state
+ * that is not on its path is final and can be merged with an equivalent
+ * registered state.  Only the minimized graph plus the current path is
+ * ever held in memory.
+ */
+class DawgBuilder {
+
+  private static final State[] NO_CHILDREN = new State[0];
+
+  private static class State {
+    int mask;
+    /** The lists that have the word ending here, if it is one. */
+    int members;
+    State[] children = NO_CHILDREN;
+    int block = -1;
+    int reachable;
+    int minRemaining = -1;
+    int maxRemaining;
+
+    State lastChild() {
+      return this.children[this.children.length - 1];
+    }
+
+    void setLastChild(State child) {
+      this.children[this.children.length - 1] = child;
+    }
+
+    State addChild(int sym) {
+      State child = new State();
+      this.children = Arrays.copyOf(this.children, this.children.length + 1);
+      this.children[this.children.length - 1] = child;
+      this.mask |= 1 << sym;
+      return child;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (!(o instanceof State)) {
+        return false;
+      }
+      State other = (State) o;
+      if (this.mask != other.mask || this.members != other.members) {
+        return false;
+      }
+      for (int i = 0; i < this.children.length; ++i) {
+        if (this.children[i] != other.children[i]) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    @Override
+    public int hashCode() {
+      int hash = 31 * this.mask + this.members;
+      for (State child : this.children) {
+        hash = 31 * hash + System.identityHashCode(child);
+      }
+      return hash;
+    }
+  }
+
+  DawgBuilder() {
+    this._root = new State();
+    this._register = new HashMap<>();
+    this._prev = "";
+  }
+
+  /**
+   * Adds a lowercase a-z word.  Words must be added in strictly increasing
+   * order.
+   */
+  void add(String word) {
+    add(word, 1);
+  }
+
+  /**
+   * Adds a word that is in the word lists in members (bit 0 = the first).
+   */
+  void add(String word, int members) {
+    if (word.compareTo(this._prev) <= 0) {
+      throw new IllegalArgumentException(
+          String.format("words must be added in sorted order: '%s' after '%s'", word, this._prev));
+    }
+    int common = 0;
+    int max = Math.min(word.length(), this._prev.length());
+    while (common < max && word.charAt(common) == this._prev.charAt(common)) ++common;
+
+    State state = this._root;
+    for (int i = 0; i < common; ++i) {
+      state = state.lastChild();
+    }
+    if (state.children.length > 0) {
+      replaceOrRegister(state);
+    }
+    for (int i = common; i < word.length(); ++i) {
+      state = state.addChild(word.charAt(i) - 'a');
+    }
+    state.mask |= Dawg.WORD_BIT;
+    state.members = members;
+    this._prev = word;
+  }
+
+  Dawg build() {
+    if (this._root.children.length > 0) {
+      replaceOrRegister(this._root);
+    }
+
+    // ---> give every distinct state with children a contiguous block of slots
+    List<State> order = new ArrayList<>();
+    ArrayDeque<State> queue = new ArrayDeque<>();
+    int next = 1;
+    this._root.block = next;
+    next += this._root.children.length;
+    queue.add(this._root);
+    while (!queue.isEmpty()) {
+      State state = queue.poll();
+      order.add(state);
+      for (State child : state.children) {
+        if (child.block == -1) {
+          if (child.children.length == 0) {
+            child.block = 0;
+          } else {
+            child.block = next;
+            next += child.children.length;
+            queue.add(child);
+          }
+        }
+      }
+    }
+
+    int[] nodes = new int[next * Dawg.STRIDE];
+    setNode(nodes, 0, this._root);
+    for (State state : order) {
+      for (int i = 0; i < state.children.length; ++i) {
+        setNode(nodes, state.block + i, state.children[i]);
+      }
+    }
+    this._register = null;
+    return new Dawg(IntBuffer.wrap(nodes));
+  }
+
+  private static void setNode(int[] nodes, int node, State state) {
+    measure(state);
+    int base = node * Dawg.STRIDE;
+    nodes[base + Dawg.MASK] = state.mask;
+    nodes[base + Dawg.FIRST_CHILD] = state.block;
+    nodes[base + Dawg.REACHABLE] = state.reachable;
+    nodes[base + Dawg.LENGTHS] = state.minRemaining | state.maxRemaining << 8 | state.members << Dawg.MEMBERS_SHIFT;
+  }
+
+  /**
+   * Fills in the letters reachable below state and the shortest and
+   * longest ways to finish a word from it.
+   */
+  private static void measure(State state) {
+    if (state.minRemaining >= 0) {
+      return;
+    }
+    boolean word = (state.mask & Dawg.WORD_BIT) != 0;
+    int min = word || state.children.length == 0 ? 0 : Dawg.MAX_REMAINING;
+    int max = 0;
+    int reachable = 0;
+    int syms = state.mask & ~Dawg.WORD_BIT;
+    for (State child : state.children) {
+      measure(child);
+      reachable |= ((1 << Integer.numberOfTrailingZeros(syms)) & Dawg.CHILD_BITS) | child.reachable;
+      syms &= syms - 1;
+      min = Math.min(min, Math.min(child.minRemaining + 1, Dawg.MAX_REMAINING));
+      max = Math.max(max, Math.min(child.maxRemaining + 1, Dawg.MAX_REMAINING));
+    }
+    state.reachable = reachable;
+    state.minRemaining = min;
+    state.maxRemaining = max;
+  }
+
+  private void replaceOrRegister(State state) {
+    State child = state.lastChild();
+    if (child.children.length > 0) {
+      replaceOrRegister(child);
+    }
+    State existing = this._register.get(child);
+    if (existing != null) {
+      state.setLastChild(existing);
+    } else {
+      this._register.put(child, child);
+    }
+  }
+
+  private State _root;
+  private Map<State, State> _register;
+  private String _prev;
+}
@@ -0,0 +1,26 @@
+package org.rkilgore.wordfinder;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Compiles a word list into a dictionary image that {@link Dawg#open} can
+ * map directly, so callers skip rebuilding the graph on every start.
+ * Given several word lists it compiles their union, with each word marked
+ * with the lists it is in (see {@link Dawg#union}).
+ */
+public class DawgCompiler {
+
+  public static void main(String[] args) throws IOException {
+    if (args.length < 2 || args.length - 1 > Dawg.MAX_LISTS) {
+      System.out.printf("usage: DawgCompiler <wordsfile> [<wordsfile> ... (up to %d)] <imagefile>%n", Dawg.MAX_LISTS);
+      System.exit(1);
+    }
+    List<String> wordsfiles = Arrays.asList(args).subList(0, args.length - 1);
+    String imagefile = args[args.length - 1];
+    Dawg dawg = wordsfiles.size() == 1 ? Dawg.fromFile(wordsfiles.get(0)) : Dawg.load(wordsfiles);
+    dawg.save(imagefile);
+    System.out.printf("%s: %d nodes written to %s%n", String.join(",", wordsfiles), dawg.size(), imagefile);
+  }
+}
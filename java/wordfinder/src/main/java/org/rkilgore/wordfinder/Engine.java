@@ -0,0 +1,6 @@
+package org.rkilgore.wordfinder;
+
+public enum Engine {
+  DAWG,
+  GADDAG
+}
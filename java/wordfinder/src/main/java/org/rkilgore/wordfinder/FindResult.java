@@ -5,7 +5,14 @@ import lombok.AllArgsConstructor;
 
 @AllArgsConstructor
 public class FindResult {
+  public FindResult(Map<String, WordInfo> words, boolean ok, String errmsg, Mode mode) {
+    this(words, ok, errmsg, mode, null);
+  }
+
   public final Map<String, WordInfo> words;
   public final boolean ok;
   public final String errmsg;
+  public final Mode mode;
+  /** Null unless the search was run with stats collection on. */
+  public final SearchStats stats;
 }
@@ -0,0 +1,160 @@
+package org.rkilgore.wordfinder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+ * WordFinders for queries from many threads with differing command lines.
+ * A dictionary is loaded the first time a query names it and then shared;
+ * queries with the same settings also share one WordFinder, and with it
+ * its result cache and any Gaddag or anagram index it has built.
+ *
+ * A words file that changes is loaded again by the next query that finds
+ * it changed, while the other queries carry on with the old dictionary;
+ * each WordFinder then switches over as a single update.  Replace a file
+ * by renaming a new one over it: an image is mapped, not read, so writing
+ * into it would change it under running searches.
+ */
+class FinderPool {
+
+  private static final long CHECK_MILLIS = 1000;
+
+  /**
+   * A loaded dictionary and the files it came from, as they were when
+   * loaded.
+   */
+  private static class Loaded {
+    Loaded(List<String> paths, long generation) {
+      this.paths = paths;
+      this.generation = generation;
+      this.stamps = stamps(paths);
+      this.dict = Dawg.load(paths);
+      this._checked = System.currentTimeMillis();
+    }
+
+    /**
+     * Whether the files have changed since they were loaded, looking at
+     * most once every CHECK_MILLIS.  Only one caller is told so.
+     */
+    boolean claimReload() {
+      long now = System.currentTimeMillis();
+      if (now - this._checked < CHECK_MILLIS) {
+        return false;
+      }
+      this._checked = now;
+      long[] stamps = stamps(this.paths);
+      for (int i = 0; i < stamps.length; ++i) {
+        // ---> a file that is gone may be midway through being replaced
+        if (stamps[i] == 0) {
+          return false;
+        }
+      }
+      return !Arrays.equals(stamps, this.stamps) && this._reloading.compareAndSet(false, true);
+    }
+
+    void reloadFailed() {
+      this._reloading.set(false);
+    }
+
+    private static long[] stamps(List<String> paths) {
+      long[] stamps = new long[paths.size()];
+      for (int i = 0; i < stamps.length; ++i) {
+        File file = new File(paths.get(i));
+        stamps[i] = file.lastModified() * 31 + file.length();
+      }
+      return stamps;
+    }
+
+    final List<String> paths;
+    /** Higher for each later load. */
+    final long generation;
+    final long[] stamps;
+    final Dawg dict;
+    private volatile long _checked;
+    private final AtomicBoolean _reloading = new AtomicBoolean();
+  }
+
+  /**
+   * A pooled WordFinder and the generation of the dictionary it searches.
+   */
+  private static class Pooled {
+    Pooled(WordFinder wf, long generation) {
+      this.wf = wf;
+      this.generation = generation;
+    }
+
+    final WordFinder wf;
+    long generation;
+  }
+
+  FinderPool() {
+    this._dicts = new ConcurrentHashMap<>();
+    this._finders = new ConcurrentHashMap<>();
+  }
+
+  /**
+   * A WordFinder configured for opts.
+   */
+  WordFinder finder(WordFinder.Options opts) {
+    Loaded loaded = loaded(opts.wordsfile);
+    Pooled pooled = this._finders.computeIfAbsent(opts.finderKey(), key -> {
+      WordFinder wf = new WordFinder(loaded.dict.select(opts.anyOf, opts.allOf));
+      opts.configure(wf);
+      return new Pooled(wf, loaded.generation);
+    });
+    synchronized (pooled) {
+      // ---> a query that looked before a reload mustn't undo it
+      if (pooled.generation < loaded.generation) {
+        pooled.wf.setDictionary(loaded.dict.select(opts.anyOf, opts.allOf));
+        pooled.generation = loaded.generation;
+      }
+    }
+    return pooled.wf;
+  }
+
+  /**
+   * The dictionary for a words file, or for several separated by commas.
+   */
+  Dawg dict(String wordsfiles) {
+    return loaded(wordsfiles).dict;
+  }
+
+  private Loaded loaded(String wordsfiles) {
+    List<String> paths = new ArrayList<>();
+    for (String wordsfile : wordsfiles.split(",")) {
+      try {
+        paths.add(new File(wordsfile).getCanonicalPath());
+      } catch (IOException e) {
+        paths.add(new File(wordsfile).getAbsolutePath());
+      }
+    }
+    String key = String.join(",", paths);
+    Loaded loaded = this._dicts.computeIfAbsent(key, k -> new Loaded(paths, this._generations.incrementAndGet()));
+    if (loaded.claimReload()) {
+      long start = System.nanoTime();
+      try {
+        Loaded reloaded = new Loaded(paths, this._generations.incrementAndGet());
+        this._dicts.put(key, reloaded);
+        System.err.printf("reloaded %s in %.0fms%n", key, (System.nanoTime() - start) / 1e6);
+        loaded = reloaded;
+      } catch (IllegalArgumentException e) {
+        // ---> keep serving the old dictionary, and try again on the next check
+        System.err.println("can't reload " + key + ": " + e.getMessage());
+        loaded.reloadFailed();
+      }
+    }
+    return loaded;
+  }
+
+  private final Map<String, Loaded> _dicts;
+  private final Map<String, Pooled> _finders;
+  private final AtomicLong _generations = new AtomicLong();
+}
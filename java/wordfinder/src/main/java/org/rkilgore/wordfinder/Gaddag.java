@@ -0,0 +1,86 @@
+package org.rkilgore.wordfinder;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+
+/**
+ * A GADDAG over the words of a Dawg, for searches that start from a letter
+ * in the middle of a word.
+ *
+ * Every word w of length n is stored n times, once for each split point i
+ * in 1..n, as the reverse of its first i letters, then SEPARATOR, then the
+ * rest of the word: "cat" is stored as "c{at", "ac{t" and "tac{".  A path
+ * from the root therefore spells a word outward from any one of its
+ * letters, first leftwards and then, after the separator, rightwards, and
+ * every step of the way is a prefix of some stored path.
+ *
+ * The graph is held in an ordinary minimized Dawg whose alphabet has one
+ * extra symbol: SEPARATOR is the character after 'z', so it is child bit
+ * 26 and sorts after every letter.
+ */
+class Gaddag {
+
+  static final char SEPARATOR = (char) ('z' + 1);
+
+  private Gaddag(Dawg graph) {
+    this._graph = graph;
+  }
+
+  static Gaddag fromDawg(Dawg dict) {
+    List<String> paths = new ArrayList<>();
+    if (dict.size() > 0) {
+      addPaths(dict, Dawg.ROOT, new char[64], 0, paths);
+    }
+    Collections.sort(paths);
+    DawgBuilder builder = new DawgBuilder();
+    for (String path : paths) {
+      builder.add(path);
+    }
+    return new Gaddag(builder.build());
+  }
+
+  private static void addPaths(Dawg dict, int node, char[] word, int len, List<String> paths) {
+    if (len > 0 && dict.isWord(node)) {
+      StringBuilder sb = new StringBuilder(len + 1);
+      for (int split = 1; split <= len; ++split) {
+        sb.setLength(0);
+        for (int i = split - 1; i >= 0; --i) {
+          sb.append(word[i]);
+        }
+        sb.append(SEPARATOR).append(word, split, len - split);
+        paths.add(sb.toString());
+      }
+    }
+    if (len == word.length) {
+      return;
+    }
+    for (int syms = dict.childMask(node); syms != 0; syms &= syms - 1) {
+      char ch = (char) ('a' + Integer.numberOfTrailingZeros(syms));
+      word[len] = ch;
+      addPaths(dict, dict.child(node, ch), word, len + 1, paths);
+    }
+  }
+
+  int child(int node, char ch) {
+    return this._graph.child(node, ch);
+  }
+
+  /**
+   * The letters with a child under node, without the separator.
+   */
+  int childMask(int node) {
+    return this._graph.childMask(node);
+  }
+
+  boolean isWord(int node) {
+    return this._graph.isWord(node);
+  }
+
+  int size() {
+    return this._graph.size();
+  }
+
+  private final Dawg _graph;
+}
@@ -0,0 +1,205 @@
+package org.rkilgore.wordfinder;
+
+import org.rkilgore.wordfinder.WordFinder.Tile;
+
+
+/**
+ * A NORMAL mode search that walks a Gaddag outward from a fixed template
+ * letter (the anchor) instead of walking the Dawg from the first letter of
+ * the word.
+ *
+ * The search first covers the template from the anchor leftwards, then
+ * adds prefix letters from the rack, then crosses the separator and covers
+ * the rest of the template rightwards before adding postfix letters.
+ * Every letter is checked against the Gaddag as it is placed, so prefix
+ * letters are never guessed ahead of the template letters that decide
+ * whether they can lead anywhere.
+ *
+ * Words are built in place in a buffer with room for the longest prefix on
+ * the left, and copied into the context's stacks in reading order only when
+ * one is recorded.  The words found, and the way they are scored and
+ * recorded, are the same as the Dawg search.
+ */
+class GaddagSearch {
+
+  GaddagSearch(Gaddag gaddag, int[] letterScores, SearchContext ctx, Rack rack) {
+    this._gaddag = gaddag;
+    this._letterScores = letterScores;
+    this._ctx = ctx;
+    this._rack = rack;
+    this._base = ctx.maxPrefix;
+    this._word = new char[ctx.maxPrefix + ctx.tiles.length + ctx.maxPostfix];
+    this._blank = new boolean[this._word.length];
+  }
+
+  /**
+   * The template position to start from: its first fixed letter, or -1 if
+   * it has none and there is nothing to anchor on.
+   */
+  static int anchor(SearchContext ctx) {
+    for (int tpos = 0; tpos < ctx.tiles.length; ++tpos) {
+      Tile tile = ctx.tiles[tpos];
+      if (!tile.open && tile.hasLetter()) {
+        return tpos;
+      }
+    }
+    return -1;
+  }
+
+  void search(int anchor) {
+    this._anchor = anchor;
+    left(this._base + anchor, Dawg.ROOT, 0, 1);
+  }
+
+  /**
+   * Places the letter at pos, then carries on leftwards.  Positions before
+   * the template are prefix letters from the rack.
+   */
+  private void left(int pos, int node, int score, int wordMult) {
+    if (this._ctx.stats != null) {
+      ++this._ctx.stats.nodesExpanded;
+    }
+    int tpos = pos - this._base;
+    if (tpos < 0) {
+      // ---> the template is covered back to its start: finish here, or add a prefix letter
+      crossSeparator(pos + 1, node, score, wordMult);
+      if (-tpos > this._ctx.maxPrefix || this._rack.size() <= this._ctx.openTilesFrom[this._anchor + 1]) {
+        return;
+      }
+      placeFromRack(pos, node, score, wordMult, null, true);
+    } else {
+      placeTemplate(pos, node, score, wordMult, true);
+    }
+  }
+
+  private void crossSeparator(int start, int node, int score, int wordMult) {
+    int next = this._gaddag.child(node, Gaddag.SEPARATOR);
+    if (next == Dawg.NONE) {
+      if (this._ctx.stats != null) {
+        ++this._ctx.stats.prunedNoPrefix;
+      }
+      return;
+    }
+    this._start = start;
+    right(this._base + this._anchor + 1, next, score, wordMult);
+  }
+
+  /**
+   * Places the letter at pos, then carries on rightwards.  Positions after
+   * the template are postfix letters from the rack, and every position
+   * past the end of the template may end a word.
+   */
+  private void right(int pos, int node, int score, int wordMult) {
+    if (this._ctx.stats != null) {
+      ++this._ctx.stats.nodesExpanded;
+    }
+    int tpos = pos - this._base;
+    if (tpos < this._ctx.tiles.length) {
+      placeTemplate(pos, node, score, wordMult, false);
+      return;
+    }
+    if (this._gaddag.isWord(node)) {
+      record(pos, score, wordMult);
+    }
+    if (tpos - this._ctx.tiles.length < this._ctx.maxPostfix && !this._rack.isEmpty()) {
+      placeFromRack(pos, node, score, wordMult, null, false);
+    }
+  }
+
+  private void placeTemplate(int pos, int node, int score, int wordMult, boolean leftward) {
+    Tile tile = this._ctx.tiles[pos - this._base];
+    if (tile.open && !tile.hasLetter()) {
+      placeFromRack(pos, node, score, wordMult, tile, leftward);
+      return;
+    }
+    if (!tile.hasLetter()) {
+      // ---> a closed tile with no letter ([:@]): nothing can go here
+      if (this._ctx.stats != null) {
+        ++this._ctx.stats.prunedNoPrefix;
+      }
+      return;
+    }
+    char ch = tile.letter;
+    boolean fromRack = tile.open;
+    if (fromRack) {
+      // ---> the player asked for one of their letters here
+      if (!this._rack.has(ch)) {
+        return;
+      }
+      this._rack.take(ch);
+    }
+    int value = tile.isZeroLetter ? 0 : this._letterScores[ch - 'a'] * tile.letterMult;
+    place(pos, node, ch, false, score + value, wordMult * tile.wordMult, leftward);
+    if (fromRack) {
+      this._rack.put(ch);
+    }
+  }
+
+  /**
+   * Tries each distinct rack letter at pos, then a blank as each letter,
+   * skipping any letter that has no child under node.
+   * tile is the template tile at pos, or null for a prefix or postfix
+   * letter.
+   */
+  private void placeFromRack(int pos, int node, int score, int wordMult, Tile tile, boolean leftward) {
+    int letterMult = tile != null ? tile.letterMult : 1;
+    int nextWordMult = tile != null ? wordMult * tile.wordMult : wordMult;
+    int childMask = this._gaddag.childMask(node);
+    for (int syms = this._rack.letterMask() & childMask; syms != 0; syms &= syms - 1) {
+      int letter = Integer.numberOfTrailingZeros(syms);
+      char ch = (char) ('a' + letter);
+      this._rack.take(ch);
+      place(pos, node, ch, false, score + this._letterScores[letter] * letterMult, nextWordMult, leftward);
+      this._rack.put(ch);
+    }
+    if (this._rack.blanks() > 0 && childMask != 0) {
+      this._rack.takeBlank();
+      for (int syms = childMask; syms != 0; syms &= syms - 1) {
+        char ch = (char) ('a' + Integer.numberOfTrailingZeros(syms));
+        place(pos, node, ch, true, score, nextWordMult, leftward);
+      }
+      this._rack.putBlank();
+    }
+  }
+
+  private void place(int pos, int node, char ch, boolean blank, int score, int wordMult, boolean leftward) {
+    int next = this._gaddag.child(node, ch);
+    if (next == Dawg.NONE) {
+      if (this._ctx.stats != null) {
+        ++this._ctx.stats.prunedNoPrefix;
+      }
+      return;
+    }
+    this._word[pos] = ch;
+    this._blank[pos] = blank;
+    if (leftward) {
+      left(pos - 1, next, score, wordMult);
+    } else {
+      right(pos + 1, next, score, wordMult);
+    }
+  }
+
+  private void record(int end, int score, int wordMult) {
+    int len = 0;
+    int dotsLen = 0;
+    for (int pos = this._start; pos < end; ++pos) {
+      this._ctx.word[len++] = this._word[pos];
+      if (this._blank[pos]) {
+        this._ctx.dots[dotsLen++] = this._word[pos];
+      }
+    }
+    if (this._rack.hasRequiredLetters(this._ctx.word, len)) {
+      WordFinder.addWord(this._ctx, len, len, dotsLen, -1, 0, score, 0, wordMult);
+    }
+  }
+
+  private final Gaddag _gaddag;
+  private final int[] _letterScores;
+  private final SearchContext _ctx;
+  private final Rack _rack;
+  private final int _base;
+  private final char[] _word;
+  private final boolean[] _blank;
+  private int _anchor;
+  private int _start;
+}
@@ -0,0 +1,208 @@
+package org.rkilgore.wordfinder;
+
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+
+/**
+ * Just enough JSON for one-line query files: an object whose values are
+ * strings, numbers, booleans or null, and quoting strings for output.
+ * Arrays and objects inside it are checked and skipped, so records with
+ * fields a reader doesn't use can still be read.
+ */
+class Json {
+
+  /** The value of a field that held an array or object. */
+  static final Object NESTED = new Object();
+
+  /**
+   * The fields of an object, numbers as Doubles and arrays and objects as
+   * NESTED.  Throws IllegalArgumentException if text is anything else.
+   */
+  static Map<String, Object> parseObject(String text) {
+    Json json = new Json(text);
+    Map<String, Object> fields = new LinkedHashMap<>();
+    json.expect('{');
+    if (!json.take('}')) {
+      do {
+        String key = json.string();
+        json.expect(':');
+        fields.put(key, json.value());
+      } while (json.take(','));
+      json.expect('}');
+    }
+    json.skipSpace();
+    if (json._pos != text.length()) {
+      throw json.error("trailing characters");
+    }
+    return fields;
+  }
+
+  static String quote(String s) {
+    StringBuilder sb = new StringBuilder(s.length() + 2).append('"');
+    for (int i = 0; i < s.length(); ++i) {
+      char ch = s.charAt(i);
+      switch (ch) {
+        case '"':
+          sb.append("\\\"");
+          break;
+        case '\\':
+          sb.append("\\\\");
+          break;
+        case '\n':
+          sb.append("\\n");
+          break;
+        case '\r':
+          sb.append("\\r");
+          break;
+        case '\t':
+          sb.append("\\t");
+          break;
+        default:
+          if (ch < 0x20) {
+            sb.append(String.format(Locale.ROOT, "\\u%04x", (int) ch));
+          } else {
+            sb.append(ch);
+          }
+      }
+    }
+    return sb.append('"').toString();
+  }
+
+  private Json(String text) {
+    this._text = text;
+  }
+
+  private Object value() {
+    skipSpace();
+    if (this._pos >= this._text.length()) {
+      throw error("missing value");
+    }
+    char ch = this._text.charAt(this._pos);
+    if (ch == '"') {
+      return string();
+    }
+    if (ch == '[' || ch == '{') {
+      skipNested();
+      return NESTED;
+    }
+    if (this._text.startsWith("true", this._pos)) {
+      this._pos += 4;
+      return Boolean.TRUE;
+    }
+    if (this._text.startsWith("false", this._pos)) {
+      this._pos += 5;
+      return Boolean.FALSE;
+    }
+    if (this._text.startsWith("null", this._pos)) {
+      this._pos += 4;
+      return null;
+    }
+    int start = this._pos;
+    while (this._pos < this._text.length() && "+-.0123456789eE".indexOf(this._text.charAt(this._pos)) >= 0) {
+      ++this._pos;
+    }
+    try {
+      return Double.valueOf(this._text.substring(start, this._pos));
+    } catch (NumberFormatException e) {
+      this._pos = start;
+      throw error("unsupported value");
+    }
+  }
+
+  private void skipNested() {
+    boolean object = this._text.charAt(this._pos) == '{';
+    char close = object ? '}' : ']';
+    ++this._pos;
+    if (take(close)) {
+      return;
+    }
+    do {
+      if (object) {
+        string();
+        expect(':');
+      }
+      value();
+    } while (take(','));
+    expect(close);
+  }
+
+  private String string() {
+    expect('"');
+    StringBuilder sb = new StringBuilder();
+    while (this._pos < this._text.length()) {
+      char ch = this._text.charAt(this._pos++);
+      if (ch == '"') {
+        return sb.toString();
+      }
+      if (ch != '\\') {
+        sb.append(ch);
+        continue;
+      }
+      if (this._pos >= this._text.length()) {
+        break;
+      }
+      char esc = this._text.charAt(this._pos++);
+      switch (esc) {
+        case 'b':
+          sb.append('\b');
+          break;
+        case 'f':
+          sb.append('\f');
+          break;
+        case 'n':
+          sb.append('\n');
+          break;
+        case 'r':
+          sb.append('\r');
+          break;
+        case 't':
+          sb.append('\t');
+          break;
+        case 'u':
+          if (this._pos + 4 > this._text.length()) {
+            throw error("bad unicode escape");
+          }
+          try {
+            sb.append((char) Integer.parseInt(this._text.substring(this._pos, this._pos + 4), 16));
+          } catch (NumberFormatException e) {
+            throw error("bad unicode escape");
+          }
+          this._pos += 4;
+          break;
+        default:
+          sb.append(esc);
+      }
+    }
+    throw error("unterminated string");
+  }
+
+  private void expect(char ch) {
+    if (!take(ch)) {
+      throw error("expected '" + ch + "'");
+    }
+  }
+
+  private boolean take(char ch) {
+    skipSpace();
+    if (this._pos < this._text.length() && this._text.charAt(this._pos) == ch) {
+      ++this._pos;
+      return true;
+    }
+    return false;
+  }
+
+  private void skipSpace() {
+    while (this._pos < this._text.length() && Character.isWhitespace(this._text.charAt(this._pos))) {
+      ++this._pos;
+    }
+  }
+
+  private IllegalArgumentException error(String msg) {
+    return new IllegalArgumentException(String.format("%s at offset %d", msg, this._pos));
+  }
+
+  private final String _text;
+  private int _pos;
+}
@@ -0,0 +1,51 @@
+package org.rkilgore.wordfinder;
+
+import java.util.logging.Logger;
+
+/**
+ * Writes trace events to the WordFinder logger, one line per event,
+ * indented by depth.  This is what setDebug(true) and -debug use.
+ */
+public class LoggingTraceSink implements TraceSink {
+
+  @Override
+  public void event(TraceEvent e) {
+    String indent = "    ".repeat(e.depth);
+    switch (e.kind) {
+      case ENTER:
+        logger.info(String.format("%senter sofar=%s%s dotsSoFar=%s letters=%s template=%s score=%d prefix=%d postfix=%d node=%d",
+                                  indent, e.word, e.overUnder == null ? "" : " " + e.overUnder,
+                                  e.dots, e.letters, e.template, e.score, e.prefixLen, e.postfixLen, e.node));
+        break;
+      case PLACE:
+        logger.info(String.format("%s  %s ADDING '%c': sofar=%s letters=%s templ=%s",
+                                  indent, e.placement, e.letter, e.word, e.letters, e.template));
+        break;
+      case PLACED:
+        logger.info(String.format("%s    after adding %c%s scoreAdd=%d ouScoreAdd=%d score=%d",
+                                  indent, e.letter, e.overUnder == null ? "" : " " + e.overUnder,
+                                  e.scoreAdd, e.overUnderScoreAdd, e.score));
+        break;
+      case OVER_UNDER:
+        logger.info(String.format("%s    overunder score %d from %c", indent, e.overUnderScoreAdd, e.letter));
+        break;
+      case PRUNE:
+        if (e.reason == TraceEvent.Reason.OVER_UNDER) {
+          logger.info(String.format("%s    prune %s: %s is not a word", indent, e.reason, e.overUnder));
+          break;
+        }
+        logger.info(String.format("%s    prune %s: sofar=%s letters=%s templ=%s%s",
+                                  indent, e.reason, e.word, e.letters, e.template,
+                                  e.letter == 0 ? "" : String.format(" letter='%c'", e.letter)));
+        break;
+      case ADD_WORD:
+        logger.info(String.format("%s    addWord(%s, %s, %d)", indent, e.word, e.dots, e.score));
+        break;
+      default:
+        logger.info(indent + e);
+        break;
+    }
+  }
+
+  private static Logger logger = Logger.getLogger("WordFinder");
+}
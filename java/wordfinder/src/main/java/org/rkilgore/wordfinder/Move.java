@@ -0,0 +1,28 @@
+package org.rkilgore.wordfinder;
+
+import java.util.Locale;
+import lombok.AllArgsConstructor;
+
+/**
+ * One legal play on a Board: the main word, where it starts (0-based), its
+ * direction and its full score including cross-words.  dotVals lists the
+ * letters played from blanks, in order.
+ */
+@AllArgsConstructor
+public class Move {
+  public final String word;
+  public final int row;
+  public final int col;
+  public final boolean across;
+  public final int score;
+  public final String dotVals;
+  public final int tilesPlaced;
+
+  @Override
+  public String toString() {
+    return String.format(Locale.ROOT, "%s%s at %d,%d %s score:%d",
+                         this.dotVals.isEmpty() ? "" : this.dotVals + ": ",
+                         this.word, this.row + 1, this.col + 1,
+                         this.across ? "across" : "down", this.score);
+  }
+}
@@ -0,0 +1,304 @@
+package org.rkilgore.wordfinder;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.rkilgore.wordfinder.WordFinder.Tile;
+
+
+/**
+ * Generates every legal play of a rack on a Board, using anchors and
+ * cross-checks (Appel and Jacobson).
+ *
+ * Each direction is handled as a set of lines: rows for across plays,
+ * columns for down plays.  Before a line is searched, every empty square
+ * gets a cross-check mask of the letters that make a valid perpendicular
+ * word there, along with the score of the tiles in that perpendicular word.
+ * Words are then grown only from anchors (empty squares next to a tile, or
+ * the centre of an empty board): a left part of rack letters, or the tiles
+ * already to the anchor's left, and then an extension to the right that
+ * only tries letters the cross-checks allow.
+ */
+class MoveGenerator {
+
+  static final int BINGO_TILES = 7;
+  static final int BINGO_BONUS = 35;
+
+  MoveGenerator(Dawg dict, int[] letterScores, Board board, Rack rack) {
+    this._dict = dict;
+    this._letterScores = letterScores;
+    this._board = board;
+    this._rack = rack;
+    int maxLen = Math.max(board.rows(), board.cols());
+    this._word = new char[maxLen];
+    this._blank = new boolean[maxLen];
+    this._placed = new boolean[maxLen];
+    this._moves = new LinkedHashMap<>();
+    this._singleTiles = new HashSet<>();
+  }
+
+  List<Move> generate() {
+    for (boolean across : new boolean[] {true, false}) {
+      this._across = across;
+      this._lines = across ? this._board.rows() : this._board.cols();
+      this._length = across ? this._board.cols() : this._board.rows();
+      computeCrossChecks();
+      for (int line = 0; line < this._lines; ++line) {
+        for (int pos = 0; pos < this._length; ++pos) {
+          if (isAnchor(line, pos)) {
+            generateAt(line, pos);
+          }
+        }
+      }
+    }
+    List<Move> moves = new ArrayList<>(this._moves.values());
+    moves.sort((a, b) -> a.score != b.score ? b.score - a.score : a.word.compareTo(b.word));
+    return moves;
+  }
+
+  private void generateAt(int line, int anchor) {
+    if (anchor > 0 && letterAt(line, anchor - 1) != 0) {
+      // ---> the left part is the tiles already on the board
+      int start = anchor - 1;
+      while (start > 0 && letterAt(line, start - 1) != 0) --start;
+      int node = Dawg.ROOT;
+      int len = 0;
+      for (int pos = start; pos < anchor; ++pos) {
+        char ch = letterAt(line, pos);
+        node = this._dict.child(node, ch);
+        if (node == Dawg.NONE) {
+          return;
+        }
+        this._word[len] = ch;
+        this._blank[len] = blankAt(line, pos);
+        this._placed[len] = false;
+        ++len;
+      }
+      extendRight(line, anchor, start, anchor, node, len, 0);
+    } else {
+      // ---> the left part comes from the rack, over empty squares that are not anchors
+      int limit = 0;
+      while (anchor - limit - 1 >= 0 && letterAt(line, anchor - limit - 1) == 0
+             && !isAnchor(line, anchor - limit - 1)) {
+        ++limit;
+      }
+      leftPart(line, anchor, Dawg.ROOT, 0, limit);
+    }
+  }
+
+  private void leftPart(int line, int anchor, int node, int len, int limit) {
+    extendRight(line, anchor, anchor - len, anchor, node, len, len);
+    if (limit == 0) {
+      return;
+    }
+    for (int syms = this._dict.childMask(node); syms != 0; syms &= syms - 1) {
+      int letter = Integer.numberOfTrailingZeros(syms);
+      char ch = (char) ('a' + letter);
+      int next = this._dict.child(node, ch);
+      if (this._rack.count(letter) > 0) {
+        this._rack.take(ch);
+        setLetter(len, ch, false, true);
+        leftPart(line, anchor, next, len + 1, limit - 1);
+        this._rack.put(ch);
+      }
+      if (this._rack.blanks() > 0) {
+        this._rack.takeBlank();
+        setLetter(len, ch, true, true);
+        leftPart(line, anchor, next, len + 1, limit - 1);
+        this._rack.putBlank();
+      }
+    }
+  }
+
+  private void extendRight(int line, int pos, int start, int anchor, int node, int len, int placed) {
+    if (pos >= this._length || letterAt(line, pos) == 0) {
+      if (pos > anchor && len >= 2 && this._dict.isWord(node)) {
+        record(line, start, len, placed);
+      }
+      if (pos >= this._length) {
+        return;
+      }
+      int allowed = this._crossMask[line][pos] & this._dict.childMask(node);
+      for (int syms = allowed; syms != 0; syms &= syms - 1) {
+        int letter = Integer.numberOfTrailingZeros(syms);
+        char ch = (char) ('a' + letter);
+        int next = this._dict.child(node, ch);
+        if (this._rack.count(letter) > 0) {
+          this._rack.take(ch);
+          setLetter(len, ch, false, true);
+          extendRight(line, pos + 1, start, anchor, next, len + 1, placed + 1);
+          this._rack.put(ch);
+        }
+        if (this._rack.blanks() > 0) {
+          this._rack.takeBlank();
+          setLetter(len, ch, true, true);
+          extendRight(line, pos + 1, start, anchor, next, len + 1, placed + 1);
+          this._rack.putBlank();
+        }
+      }
+    } else {
+      // ---> run through a tile already on the board
+      char ch = letterAt(line, pos);
+      int next = this._dict.child(node, ch);
+      if (next == Dawg.NONE) {
+        return;
+      }
+      setLetter(len, ch, blankAt(line, pos), false);
+      extendRight(line, pos + 1, start, anchor, next, len + 1, placed);
+    }
+  }
+
+  private void setLetter(int i, char ch, boolean blank, boolean placed) {
+    this._word[i] = ch;
+    this._blank[i] = blank;
+    this._placed[i] = placed;
+  }
+
+  private void record(int line, int start, int len, int placed) {
+    int main = 0;
+    int wordMult = 1;
+    int cross = 0;
+    StringBuilder dotVals = new StringBuilder();
+    for (int i = 0; i < len; ++i) {
+      int pos = start + i;
+      int value = this._blank[i] ? 0 : this._letterScores[this._word[i] - 'a'];
+      if (this._blank[i] && this._placed[i]) {
+        dotVals.append(this._word[i]);
+      }
+      if (!this._placed[i]) {
+        main += value;
+        continue;
+      }
+      Tile square = squareAt(line, pos);
+      int letterValue = value * square.letterMult;
+      main += letterValue;
+      wordMult *= square.wordMult;
+      int crossSum = this._crossSum[line][pos];
+      if (crossSum >= 0) {
+        cross += (crossSum + letterValue) * square.wordMult;
+      }
+    }
+    int score = main * wordMult + cross + (placed == BINGO_TILES ? BINGO_BONUS : 0);
+
+    int row = this._across ? line : start;
+    int col = this._across ? start : line;
+    if (placed == 1) {
+      // ---> a single tile is found going both ways when it makes words both ways
+      int i = 0;
+      while (!this._placed[i]) ++i;
+      int tileRow = this._across ? line : start + i;
+      int tileCol = this._across ? start + i : line;
+      String key = tileRow + "," + tileCol + "," + this._word[i] + (this._blank[i] ? "." : "");
+      if (!this._singleTiles.add(key)) {
+        return;
+      }
+    }
+    // ---> the same play with the blanks filled another way is one move: keep
+    // ---> the best score, then the fewest blanks, as SearchContext.addWord does
+    String word = new String(this._word, 0, len);
+    String blanks = dotVals.toString();
+    String key = word + "," + row + "," + col + (this._across ? ",a" : ",d");
+    Move prev = this._moves.get(key);
+    if (prev == null || prev.score < score
+        || (prev.score == score && (blanks.length() < prev.dotVals.length()
+            || (blanks.length() == prev.dotVals.length() && blanks.compareTo(prev.dotVals) < 0)))) {
+      this._moves.put(key, new Move(word, row, col, this._across, score, blanks, placed));
+    }
+  }
+
+  /**
+   * For every empty square, the letters that make a word with the tiles
+   * directly before and after it across this direction, and the score of
+   * those tiles (-1 if there are none, so no cross-word is formed).
+   */
+  private void computeCrossChecks() {
+    this._crossMask = new int[this._lines][this._length];
+    this._crossSum = new int[this._lines][this._length];
+    this._anyTile = !this._board.isEmpty();
+    for (int line = 0; line < this._lines; ++line) {
+      for (int pos = 0; pos < this._length; ++pos) {
+        if (letterAt(line, pos) != 0) {
+          continue;
+        }
+        int first = line;
+        while (first > 0 && letterAt(first - 1, pos) != 0) --first;
+        int last = line;
+        while (last + 1 < this._lines && letterAt(last + 1, pos) != 0) ++last;
+        if (first == line && last == line) {
+          this._crossMask[line][pos] = SearchContext.ALL_LETTERS;
+          this._crossSum[line][pos] = -1;
+          continue;
+        }
+        int sum = 0;
+        int node = Dawg.ROOT;
+        for (int l = first; l < line && node != Dawg.NONE; ++l) {
+          node = this._dict.child(node, letterAt(l, pos));
+        }
+        for (int l = first; l <= last; ++l) {
+          if (l != line && !blankAt(l, pos)) {
+            sum += this._letterScores[letterAt(l, pos) - 'a'];
+          }
+        }
+        int mask = 0;
+        if (node != Dawg.NONE) {
+          for (int letter = 0; letter < 26; ++letter) {
+            int n = this._dict.child(node, (char) ('a' + letter));
+            for (int l = line + 1; l <= last && n != Dawg.NONE; ++l) {
+              n = this._dict.child(n, letterAt(l, pos));
+            }
+            if (n != Dawg.NONE && this._dict.isWord(n)) {
+              mask |= 1 << letter;
+            }
+          }
+        }
+        this._crossMask[line][pos] = mask;
+        this._crossSum[line][pos] = sum;
+      }
+    }
+  }
+
+  private boolean isAnchor(int line, int pos) {
+    if (letterAt(line, pos) != 0) {
+      return false;
+    }
+    if (!this._anyTile) {
+      return line == this._lines / 2 && pos == this._length / 2;
+    }
+    return (pos > 0 && letterAt(line, pos - 1) != 0)
+        || (pos + 1 < this._length && letterAt(line, pos + 1) != 0)
+        || (line > 0 && letterAt(line - 1, pos) != 0)
+        || (line + 1 < this._lines && letterAt(line + 1, pos) != 0);
+  }
+
+  private char letterAt(int line, int pos) {
+    return this._across ? this._board.letter(line, pos) : this._board.letter(pos, line);
+  }
+
+  private boolean blankAt(int line, int pos) {
+    return this._across ? this._board.isBlank(line, pos) : this._board.isBlank(pos, line);
+  }
+
+  private Tile squareAt(int line, int pos) {
+    return this._across ? this._board.square(line, pos) : this._board.square(pos, line);
+  }
+
+  private final Dawg _dict;
+  private final int[] _letterScores;
+  private final Board _board;
+  private final Rack _rack;
+  private final char[] _word;
+  private final boolean[] _blank;
+  private final boolean[] _placed;
+  /** The best way found to make each play, by word, square and direction. */
+  private final Map<String, Move> _moves;
+  private final Set<String> _singleTiles;
+  private boolean _across;
+  private boolean _anyTile;
+  private int _lines;
+  private int _length;
+  private int[][] _crossMask;
+  private int[][] _crossSum;
+}
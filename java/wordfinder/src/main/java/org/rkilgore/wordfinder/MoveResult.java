@@ -0,0 +1,11 @@
+package org.rkilgore.wordfinder;
+
+import java.util.List;
+import lombok.AllArgsConstructor;
+
+@AllArgsConstructor
+public class MoveResult {
+  public final List<Move> moves;
+  public final boolean ok;
+  public final String errmsg;
+}
@@ -0,0 +1,189 @@
+package org.rkilgore.wordfinder;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+
+/**
+ * Runs a file of queries, one JSON object per line, on a pool of threads
+ * and writes one JSON result per line in the same order (the -batch
+ * option).
+ *
+ * A query has "letters" and "template", and may have "mode" ("normal",
+ * "over" or "under") and "dictionary" (a words file or image); anything it
+ * leaves out comes from the command line.  A result repeats the query's
+ * line number, letters and template and adds "ok", "error", "mode",
+ * "millis" (time spent searching) and "words", best first, each with its
+ * "word", "score", "dots" and, for over/under, "overUnder".
+ *
+ * Results are written as soon as every earlier line is done, and only a
+ * few lines per thread are read ahead, so any number of queries streams
+ * through in bounded memory.
+ */
+class QueryBatch {
+
+  QueryBatch(WordFinder.Options defaults, File dir, int threads) {
+    this._defaults = defaults;
+    this._dir = dir;
+    this._threads = threads;
+    this._finders = new FinderPool();
+  }
+
+  void run(BufferedReader in, PrintStream out) throws IOException {
+    ExecutorService workers = Executors.newFixedThreadPool(this._threads);
+    Queue<Future<String>> pending = new ArrayDeque<>();
+    try {
+      int lineno = 0;
+      String line;
+      while ((line = in.readLine()) != null) {
+        ++lineno;
+        if (line.trim().isEmpty()) {
+          continue;
+        }
+        int n = lineno;
+        String query = line;
+        pending.add(workers.submit(() -> answer(n, query)));
+        if (pending.size() >= 4 * this._threads) {
+          out.println(next(pending));
+        }
+      }
+      while (!pending.isEmpty()) {
+        out.println(next(pending));
+      }
+      out.flush();
+    } finally {
+      workers.shutdownNow();
+    }
+  }
+
+  private static String next(Queue<Future<String>> pending) throws IOException {
+    try {
+      return pending.remove().get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException(e);
+    } catch (ExecutionException e) {
+      throw new IOException(e.getCause());
+    }
+  }
+
+  private String answer(int lineno, String line) {
+    StringBuilder sb = new StringBuilder();
+    sb.append("{\"line\":").append(lineno);
+    Map<String, Object> query;
+    String letters;
+    String template;
+    try {
+      query = Json.parseObject(line);
+      letters = text(query, "letters", "");
+      template = text(query, "template", "");
+    } catch (IllegalArgumentException e) {
+      return error(sb, e.getMessage());
+    }
+    sb.append(",\"letters\":").append(Json.quote(letters));
+    sb.append(",\"template\":").append(Json.quote(template));
+    int mark = sb.length();
+    try {
+      return search(sb, query, letters, template);
+    } catch (IllegalArgumentException e) {
+      sb.setLength(mark);
+      return error(sb, e.getMessage());
+    } catch (RuntimeException e) {
+      // ---> one bad query is one error line, not the end of the batch
+      sb.setLength(mark);
+      return error(sb, e.toString());
+    }
+  }
+
+  private String search(StringBuilder sb, Map<String, Object> query, String letters, String template) {
+    WordFinder.Options opts = this._defaults.copy();
+    opts.letters = letters;
+    opts.template = template;
+    String mode = text(query, "mode", null);
+    if (mode != null) {
+      try {
+        opts.mode = Mode.valueOf(mode.toUpperCase(Locale.ROOT));
+      } catch (IllegalArgumentException e) {
+        return error(sb, "unknown mode: " + mode);
+      }
+    }
+    String dictionary = text(query, "dictionary", null);
+    if (dictionary != null) {
+      opts.wordsfile = WordFinder.resolve(this._dir, dictionary);
+      if (!new File(opts.wordsfile).exists()) {
+        return error(sb, "no such dictionary: " + dictionary);
+      }
+    }
+    ValidateResult vres = WordFinder.validate(letters, template);
+    if (!vres.valid) {
+      return error(sb, vres.errmsg);
+    }
+
+    WordFinder wf = this._finders.finder(opts);
+    long start = System.nanoTime();
+    FindResult res = opts.top > 0
+        ? wf.findTopWords(letters, template, opts.top, opts.sortbylen ? SortOrder.LENGTH : SortOrder.SCORE)
+        : wf.findWords(letters, template);
+    double millis = (System.nanoTime() - start) / 1e6;
+    if (!res.ok) {
+      return error(sb, res.errmsg);
+    }
+
+    List<String> words = new ArrayList<>(res.words.keySet());
+    if (opts.top <= 0) {
+      Map<String, WordInfo> map = res.words;
+      boolean bylen = opts.sortbylen;
+      words.sort((a, b) -> bylen
+          ? WordFinder.sortByLength(a, b, map.get(a), map.get(b))
+          : WordFinder.sortByScore(a, b, map.get(a), map.get(b)));
+      // ---> sorted best last, like the command line prints them
+      Collections.reverse(words);
+    }
+    sb.append(",\"ok\":true,\"error\":\"\",\"mode\":").append(Json.quote(res.mode.name()));
+    sb.append(",\"millis\":").append(String.format(Locale.ROOT, "%.3f", millis));
+    sb.append(",\"words\":[");
+    for (int i = 0; i < words.size(); ++i) {
+      String word = words.get(i);
+      WordInfo info = res.words.get(word);
+      sb.append(i == 0 ? "{" : ",{");
+      sb.append("\"word\":").append(Json.quote(word));
+      sb.append(",\"score\":").append(info.score.score());
+      sb.append(",\"dots\":").append(Json.quote(info.dotVals));
+      if (!info.overUnder.isEmpty()) {
+        sb.append(",\"overUnder\":").append(Json.quote(info.overUnder.forWord(word, res.mode)));
+      }
+      sb.append('}');
+    }
+    return sb.append("]}").toString();
+  }
+
+  private static String error(StringBuilder sb, String errmsg) {
+    return sb.append(",\"ok\":false,\"error\":").append(Json.quote(errmsg)).append('}').toString();
+  }
+
+  private static String text(Map<String, Object> query, String key, String defval) {
+    Object value = query.get(key);
+    if (value == Json.NESTED) {
+      throw new IllegalArgumentException(String.format("\"%s\" must be a string", key));
+    }
+    return value == null ? defval : value.toString();
+  }
+
+  private final WordFinder.Options _defaults;
+  private final File _dir;
+  private final int _threads;
+  private final FinderPool _finders;
+}
@@ -0,0 +1,118 @@
+package org.rkilgore.wordfinder;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.rkilgore.wordfinder.WordFinder.Tile;
+
+
+/**
+ * Recent search results, keyed on the parsed query rather than the strings
+ * the user typed, so "ABc." and "cBA." or "3...7" and "3..." hit the same
+ * entry.  Entries are weighted by how many words they hold and the least
+ * recently used ones are dropped once the total goes over maxWords.
+ */
+public class QueryCache {
+
+  public static final int DEFAULT_MAX_WORDS = 100000;
+
+  QueryCache(int maxWords) {
+    this._maxWords = maxWords;
+    this._entries = new LinkedHashMap<>(16, 0.75f, true /* accessOrder */);
+  }
+
+  /**
+   * The canonical form of a query: mode, prefix and postfix limits, the
+   * rack as a sorted multiset with its blanks and required letters, each
+   * tile with its modifiers, and the result limit for top-k searches.
+   */
+  static String key(Mode mode, int maxPrefix, int maxPostfix, Rack rack, List<Tile> tiles, TopWords top) {
+    StringBuilder sb = new StringBuilder();
+    sb.append(mode).append('|').append(maxPrefix).append('|').append(maxPostfix);
+    sb.append('|').append(rack).append('|').append(Integer.toHexString(rack.requiredMask)).append('|');
+    for (Tile tile : tiles) {
+      sb.append(tile.open ? 'o' : 'x')
+        .append(tile.hasLetter() ? tile.letter : '.')
+        .append(tile.letterMult)
+        .append(tile.wordMult)
+        .append(tile.isZeroLetter ? '0' : '-');
+    }
+    if (top != null) {
+      sb.append('|').append(top.order).append(top.k);
+    }
+    return sb.toString();
+  }
+
+  synchronized FindResult get(String key) {
+    FindResult res = this._entries.get(key);
+    if (res == null) {
+      ++this._misses;
+    } else {
+      ++this._hits;
+    }
+    return res;
+  }
+
+  /**
+   * Caches a successful result.  The result's word map must not be modified
+   * afterwards.
+   */
+  synchronized void put(String key, FindResult res) {
+    int weight = weight(res);
+    if (weight > this._maxWords) {
+      return;
+    }
+    FindResult old = this._entries.put(key, res);
+    if (old != null) {
+      this._weight -= weight(old);
+    }
+    this._weight += weight;
+    evict();
+  }
+
+  public synchronized void clear() {
+    this._entries.clear();
+    this._weight = 0;
+  }
+
+  /**
+   * Sets the most words held across all entries; 0 turns caching off.
+   */
+  public synchronized void setMaxWords(int maxWords) {
+    this._maxWords = maxWords;
+    evict();
+  }
+
+  public synchronized int size() {
+    return this._entries.size();
+  }
+
+  public synchronized long hits() {
+    return this._hits;
+  }
+
+  public synchronized long misses() {
+    return this._misses;
+  }
+
+  private void evict() {
+    // ---> least recently used first
+    Iterator<FindResult> it = this._entries.values().iterator();
+    while (this._weight > this._maxWords && it.hasNext()) {
+      this._weight -= weight(it.next());
+      it.remove();
+    }
+  }
+
+  private static int weight(FindResult res) {
+    return res.words.size() + 1;
+  }
+
+  private int _maxWords;
+  private int _weight;
+  private long _hits;
+  private long _misses;
+  private final Map<String, FindResult> _entries;
+}
@@ -0,0 +1,129 @@
+package org.rkilgore.wordfinder;
+
+/**
+ * The player's letters as a multiset: a count per letter, a count of blank
+ * ('.') tiles, and a bitmask of the letters that were typed in uppercase
+ * and so must appear in every word found.  Letters are taken and put back
+ * in place as the search descends and backtracks.
+ */
+class Rack {
+
+  Rack(String letters) {
+    this.counts = new int[26];
+    int required = 0;
+    for (char ch : letters.toCharArray()) {
+      if (ch == '.') {
+        ++this.blanks;
+        ++this.size;
+      } else if (ch >= 'a' && ch <= 'z') {
+        ++this.counts[ch - 'a'];
+        ++this.size;
+        this.letterMask |= 1 << (ch - 'a');
+      } else if (ch >= 'A' && ch <= 'Z') {
+        ++this.counts[ch - 'A'];
+        ++this.size;
+        this.letterMask |= 1 << (ch - 'A');
+        required |= 1 << (ch - 'A');
+      }
+    }
+    this.requiredMask = required;
+  }
+
+  private Rack(Rack other) {
+    this.counts = other.counts.clone();
+    this.blanks = other.blanks;
+    this.size = other.size;
+    this.letterMask = other.letterMask;
+    this.requiredMask = other.requiredMask;
+  }
+
+  Rack copy() {
+    return new Rack(this);
+  }
+
+  int size() {
+    return this.size;
+  }
+
+  boolean isEmpty() {
+    return this.size == 0;
+  }
+
+  int count(int letter) {
+    return this.counts[letter];
+  }
+
+  boolean has(char ch) {
+    return this.counts[ch - 'a'] > 0;
+  }
+
+  /**
+   * Bitmask of the letters (not blanks) left in the rack, bit 0 = 'a'.
+   */
+  int letterMask() {
+    return this.letterMask;
+  }
+
+  int blanks() {
+    return this.blanks;
+  }
+
+  void take(char ch) {
+    if (--this.counts[ch - 'a'] == 0) {
+      this.letterMask &= ~(1 << (ch - 'a'));
+    }
+    --this.size;
+  }
+
+  void put(char ch) {
+    if (this.counts[ch - 'a']++ == 0) {
+      this.letterMask |= 1 << (ch - 'a');
+    }
+    ++this.size;
+  }
+
+  void takeBlank() {
+    --this.blanks;
+    --this.size;
+  }
+
+  void putBlank() {
+    ++this.blanks;
+    ++this.size;
+  }
+
+  /**
+   * True if the first len letters of word contain every letter that was
+   * required (uppercase) in the original rack.
+   */
+  boolean hasRequiredLetters(char[] word, int len) {
+    if (this.requiredMask == 0) {
+      return true;
+    }
+    int mask = 0;
+    for (int i = 0; i < len; ++i) {
+      mask |= 1 << (word[i] - 'a');
+    }
+    return (mask & this.requiredMask) == this.requiredMask;
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder sb = new StringBuilder(this.size);
+    for (int i = 0; i < 26; ++i) {
+      for (int n = 0; n < this.counts[i]; ++n) {
+        sb.append((char) ('a' + i));
+      }
+    }
+    for (int n = 0; n < this.blanks; ++n) {
+      sb.append('.');
+    }
+    return sb.toString();
+  }
+
+  final int requiredMask;
+  private final int[] counts;
+  private int blanks;
+  private int size;
+  private int letterMask;
+}
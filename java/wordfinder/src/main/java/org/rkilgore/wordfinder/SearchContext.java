@@ -0,0 +1,238 @@
+package org.rkilgore.wordfinder;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.rkilgore.wordfinder.WordFinder.Tile;
+
+/**
+ * Everything a single findWords() call reads or writes while it searches.
+ * WordFinder itself only holds the dictionary and score tables, which are
+ * never modified after construction, so each search gets its own context
+ * and any number of searches can share one WordFinder.
+ *
+ * The word being built, its blank assignments and the template letters it
+ * runs over or under are kept in char stacks indexed by position, so the
+ * recursion passes only lengths and offsets and nothing is allocated until
+ * a word is actually recorded.
+ *
+ * A search for the top k words collects into a TopWords instead of the
+ * words map.  A search with a listener also passes every word it records
+ * to a WordStream shared by all of its branches.
+ */
+class SearchContext {
+  static final int ALL_LETTERS = (1 << 26) - 1;
+  private static final int[] ALPHABETICAL = new int[26];
+  static {
+    for (int i = 0; i < 26; ++i) {
+      ALPHABETICAL[i] = i;
+    }
+  }
+
+  SearchContext(Dawg dict, int[] letterScores, Mode mode, List<Tile> fullTemplate,
+                int maxPrefix, int maxPostfix, int rackSize, TraceSink trace, boolean parallel,
+                TopWords top, WordStream stream, boolean collectStats) {
+    this.dict = dict;
+    this.letterScores = letterScores;
+    this.mode = mode;
+    this.fullTemplate = fullTemplate;
+    this.maxPrefix = maxPrefix;
+    this.maxPostfix = maxPostfix;
+    this.rackSize = rackSize;
+    this.trace = trace;
+    this.parallel = parallel;
+    this.top = top;
+    this.stream = stream;
+    this.stats = collectStats ? new SearchStats() : null;
+    this.words = new HashMap<String, WordInfo>();
+
+    int charsBeforeFirstLetter = 0;
+    while (fullTemplate.size() > charsBeforeFirstLetter && !fullTemplate.get(charsBeforeFirstLetter).hasLetter()) ++charsBeforeFirstLetter;
+    this.templateFirstLetterIndex = charsBeforeFirstLetter;
+
+    this.tiles = fullTemplate.toArray(new Tile[0]);
+    this.openTilesFrom = new int[this.tiles.length + 1];
+    this.lettersFrom = new int[this.tiles.length + 1];
+    this.knownScoreFrom = new int[this.tiles.length + 1];
+    this.emptyTilesFrom = new int[this.tiles.length + 1];
+    this.doubleLettersFrom = new int[this.tiles.length + 1];
+    this.tripleLettersFrom = new int[this.tiles.length + 1];
+    this.wordMultFrom = new int[this.tiles.length + 1];
+    this.wordMultFrom[this.tiles.length] = 1;
+    for (int i = this.tiles.length - 1; i >= 0; --i) {
+      Tile tile = this.tiles[i];
+      this.openTilesFrom[i] = this.openTilesFrom[i + 1] + (tile.open ? 1 : 0);
+      this.lettersFrom[i] = this.lettersFrom[i + 1] | (tile.hasLetter() ? 1 << (tile.letter - 'a') : 0);
+      this.knownScoreFrom[i] = this.knownScoreFrom[i + 1]
+          + (tile.hasLetter() && !tile.isZeroLetter ? letterScores[tile.letter - 'a'] * tile.letterMult : 0);
+      boolean empty = !tile.hasLetter();
+      this.emptyTilesFrom[i] = this.emptyTilesFrom[i + 1] + (empty ? 1 : 0);
+      this.doubleLettersFrom[i] = this.doubleLettersFrom[i + 1] + (empty && tile.letterMult == 2 ? 1 : 0);
+      this.tripleLettersFrom[i] = this.tripleLettersFrom[i + 1] + (empty && tile.letterMult == 3 ? 1 : 0);
+      this.wordMultFrom[i] = this.wordMultFrom[i + 1] * tile.wordMult;
+    }
+    // ---> the letters an over/under placement allows on each tile, from the two-letter words
+    this.allowed = new int[this.tiles.length];
+    for (int i = 0; i < this.tiles.length; ++i) {
+      Tile tile = this.tiles[i];
+      if (mode == Mode.NORMAL || !tile.hasLetter()) {
+        this.allowed[i] = ALL_LETTERS;
+      } else if (mode == Mode.OVER) {
+        this.allowed[i] = dict.leaders(tile.letter);
+      } else {
+        this.allowed[i] = dict.followers(tile.letter);
+      }
+    }
+    this.lettersByValue = new int[26];
+    Integer[] order = new Integer[26];
+    for (int i = 0; i < 26; ++i) {
+      order[i] = i;
+    }
+    Arrays.sort(order, (a, b) -> letterScores[b] - letterScores[a]);
+    for (int i = 0; i < 26; ++i) {
+      this.lettersByValue[i] = order[i];
+    }
+    // ---> a top-k search by score tries its best letters first, to raise the bar early
+    this.letterOrder = top != null && top.order != SortOrder.LENGTH ? this.lettersByValue : ALPHABETICAL;
+    this.word = new char[rackSize + this.tiles.length];
+    this.dots = new char[rackSize];
+    this.ouChars = new char[this.tiles.length];
+  }
+
+  /**
+   * A context for one branch of a parallel search: same query, but its own
+   * result map and a copy of the stacks so that branches never share
+   * mutable state.
+   */
+  SearchContext fork() {
+    SearchContext branch = new SearchContext(this.dict, this.letterScores, this.mode, this.fullTemplate,
+                                             this.maxPrefix, this.maxPostfix, this.rackSize, this.trace, this.parallel,
+                                             this.top == null ? null : this.top.emptyCopy(), this.stream,
+                                             this.stats != null);
+    System.arraycopy(this.word, 0, branch.word, 0, this.word.length);
+    System.arraycopy(this.dots, 0, branch.dots, 0, this.dots.length);
+    System.arraycopy(this.ouChars, 0, branch.ouChars, 0, this.ouChars.length);
+    return branch;
+  }
+
+  /**
+   * Records the first len letters of the word stack, materializing its
+   * WordInfo only if it may beat what is already there.  Returns whether
+   * the results changed.
+   */
+  boolean addWord(int len, int dotsLen, int ouStart, int ouLen, int score, int ouScore, int wordMult) {
+    return addWord(null, len, dotsLen, ouStart, ouLen, score, ouScore, wordMult);
+  }
+
+  /**
+   * Same, for a caller that already has the word as a String (or null to
+   * build it from the word stack).
+   */
+  boolean addWord(String word, int len, int dotsLen, int ouStart, int ouLen, int score, int ouScore, int wordMult) {
+    int total = score * wordMult + ouScore;
+    if (this.top != null && !this.top.mightAccept(len, total)) {
+      return false;
+    }
+    String key = word != null ? word : sofar(len);
+    WordInfo prev = this.top == null ? this.words.get(key) : null;
+    if (prev != null && prev.score.score() >= total && dotsLen >= prev.dotVals.length()
+        && (prev.score.score() > total || dotsLen > prev.dotVals.length())) {
+      return false;
+    }
+    WordInfo info = new WordInfo(new ScoreKeeper(score, ouScore, wordMult),
+                                 dotsSoFar(dotsLen), overUnder(ouStart, ouLen));
+    if (prev != null && !info.replaces(prev)) {
+      return false;
+    }
+    if (this.top != null) {
+      // ---> a top-k search streams only what makes the list, so it can stay bounded
+      boolean accepted = this.top.add(key, info);
+      if (accepted && this.stream != null) {
+        this.stream.offer(key, info);
+      }
+      return accepted;
+    }
+    if (this.stream != null) {
+      this.stream.offer(key, info);
+    }
+    this.words.put(key, info);
+    return true;
+  }
+
+  void addWord(String word, ScoreKeeper score, String dotVals, OverUnder overUnder) {
+    WordInfo prev = this.words.get(word);
+    WordInfo info = new WordInfo(score, dotVals, overUnder);
+    if (prev == null || info.replaces(prev)) {
+      this.words.put(word, info);
+    }
+  }
+
+  void merge(SearchContext branch) {
+    if (this.stats != null) {
+      this.stats.add(branch.stats);
+    }
+    if (this.top != null) {
+      this.top.merge(branch.top);
+      return;
+    }
+    for (Map.Entry<String, WordInfo> entry : branch.words.entrySet()) {
+      WordInfo info = entry.getValue();
+      addWord(entry.getKey(), info.score, info.dotVals, info.overUnder);
+    }
+  }
+
+  String sofar(int len) {
+    return new String(this.word, 0, len);
+  }
+
+  String dotsSoFar(int dotsLen) {
+    return new String(this.dots, 0, dotsLen);
+  }
+
+  OverUnder overUnder(int ouStart, int ouLen) {
+    return ouLen == 0 ? OverUnder.empty : new OverUnder(new String(this.ouChars, 0, ouLen), ouStart);
+  }
+
+  List<Tile> template(int tpos) {
+    return Arrays.asList(this.tiles).subList(tpos, this.tiles.length);
+  }
+
+  final Dawg dict;
+  final int[] letterScores;
+  final Mode mode;
+  final List<Tile> fullTemplate;
+  final Tile[] tiles;
+  final int[] openTilesFrom;
+  /** Bitmask of the letters on template tiles at or after each position. */
+  final int[] lettersFrom;
+  /**
+   * From each template position to the end: the score of the tiles whose
+   * letter is already known, how many tiles are empty and how many of those
+   * double or triple their letter, and the product of the word
+   * multipliers, for bounding the score of a NORMAL search.
+   */
+  final int[] knownScoreFrom;
+  final int[] emptyTilesFrom;
+  final int[] doubleLettersFrom;
+  final int[] tripleLettersFrom;
+  final int[] wordMultFrom;
+  /** Letters from highest to lowest score. */
+  final int[] lettersByValue;
+  /** The order rack letters are tried in. */
+  final int[] letterOrder;
+  final int[] allowed;
+  final int templateFirstLetterIndex;
+  final int maxPrefix;
+  final int maxPostfix;
+  final int rackSize;
+  final TraceSink trace;
+  final boolean parallel;
+  final TopWords top;
+  final WordStream stream;
+  final SearchStats stats;
+  final Map<String, WordInfo> words;
+  final char[] word;
+  final char[] dots;
+  final char[] ouChars;
+}
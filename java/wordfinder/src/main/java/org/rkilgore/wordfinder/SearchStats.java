@@ -0,0 +1,55 @@
+package org.rkilgore.wordfinder;
+
+import java.util.Locale;
+
+/**
+ * Counters and phase timings for one search, filled in when
+ * WordFinder.setCollectStats(true) is on.  Branches of a parallel search
+ * count separately and are added together when they are merged.
+ */
+public class SearchStats {
+
+  /** Recursion steps, one per dictionary node reached. */
+  public long nodesExpanded;
+  /** Branches stopped because the rack or the postfix was used up. */
+  public long prunedTerminate;
+  /** Letters rejected because no word starts with them. */
+  public long prunedNoPrefix;
+  /** Letters rejected by the two-letter over/under check. */
+  public long prunedOverUnder;
+  /** Branches stopped because no word under the node can fit the query. */
+  public long prunedSubtree;
+  /** Branches stopped because they can't beat the k-th best word found so far. */
+  public long prunedBound;
+  public long addWordCalls;
+  /**
+   * addWord calls that recorded a new word or a better play for one.  Each
+   * parallel branch counts against its own results, so this can be higher
+   * than a sequential search of the same query.
+   */
+  public long wordsAccepted;
+  public long parseNanos;
+  public long searchNanos;
+  public long assemblyNanos;
+
+  void add(SearchStats other) {
+    this.nodesExpanded += other.nodesExpanded;
+    this.prunedTerminate += other.prunedTerminate;
+    this.prunedNoPrefix += other.prunedNoPrefix;
+    this.prunedOverUnder += other.prunedOverUnder;
+    this.prunedSubtree += other.prunedSubtree;
+    this.prunedBound += other.prunedBound;
+    this.addWordCalls += other.addWordCalls;
+    this.wordsAccepted += other.wordsAccepted;
+  }
+
+  @Override
+  public String toString() {
+    return String.format(Locale.ROOT,
+        "nodes=%d pruned(terminate=%d noPrefix=%d overUnder=%d subtree=%d bound=%d) addWord=%d accepted=%d "
+        + "parse=%.3fms search=%.3fms assembly=%.3fms",
+        this.nodesExpanded, this.prunedTerminate, this.prunedNoPrefix, this.prunedOverUnder, this.prunedSubtree, this.prunedBound,
+        this.addWordCalls, this.wordsAccepted,
+        this.parseNanos / 1e6, this.searchNanos / 1e6, this.assemblyNanos / 1e6);
+  }
+}
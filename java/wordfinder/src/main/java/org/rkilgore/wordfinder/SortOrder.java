@@ -0,0 +1,9 @@
+package org.rkilgore.wordfinder;
+
+public enum SortOrder {
+  SCORE,
+  LENGTH,
+  // ---> by score and then length like SCORE, but among equals fewer blanks
+  // ---> rank higher, then words in alphabetical order
+  SCORE_FEWEST_BLANKS
+}
@@ -0,0 +1,130 @@
+package org.rkilgore.wordfinder;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+
+/**
+ * The best k words a search has found so far, ordered as by
+ * WordFinder.sortByScore, sortByLength or sortByScoreFewestBlanks.  They are kept in a min-heap so
+ * the worst one can be dropped as soon as a better word turns up, and never
+ * more than k words are held however many the search produces.
+ */
+class TopWords {
+
+  private static class Entry {
+    Entry(String word, WordInfo info) {
+      this.word = word;
+      this.info = info;
+    }
+
+    final String word;
+    final WordInfo info;
+  }
+
+  TopWords(int k, SortOrder order) {
+    this.k = k;
+    this.order = order;
+    if (order == SortOrder.LENGTH) {
+      this._cmp = (a, b) -> WordFinder.sortByLength(a.word, b.word, a.info, b.info);
+    } else if (order == SortOrder.SCORE_FEWEST_BLANKS) {
+      this._cmp = (a, b) -> WordFinder.sortByScoreFewestBlanks(a.word, b.word, a.info, b.info);
+    } else {
+      this._cmp = (a, b) -> WordFinder.sortByScore(a.word, b.word, a.info, b.info);
+    }
+    this._heap = new PriorityQueue<>(k + 1, this._cmp);
+    this._byWord = new HashMap<>();
+  }
+
+  /**
+   * An empty list with the same k and order, for one branch of a parallel
+   * search.
+   */
+  TopWords emptyCopy() {
+    return new TopWords(this.k, this.order);
+  }
+
+  boolean isFull() {
+    return this._heap.size() >= this.k;
+  }
+
+  /**
+   * False if a word of this length and score can't make the list, so the
+   * caller can skip building it.
+   */
+  boolean mightAccept(int len, int score) {
+    if (this._heap.size() < this.k) {
+      return true;
+    }
+    Entry min = this._heap.peek();
+    int minScore = min.info.score.score();
+    int minLen = min.word.length();
+    if (this.order == SortOrder.LENGTH) {
+      return len > minLen || (len == minLen && score >= minScore);
+    }
+    return score > minScore || (score == minScore && len >= minLen);
+  }
+
+  /**
+   * Same rule as SearchContext.addWord for a word already on the list (see
+   * WordInfo.replaces).  Returns whether the list changed.
+   */
+  boolean add(String word, WordInfo info) {
+    Entry prev = this._byWord.get(word);
+    if (prev != null) {
+      if (info.replaces(prev.info)) {
+        this._heap.remove(prev);
+        insert(new Entry(word, info));
+        return true;
+      }
+      return false;
+    }
+    Entry entry = new Entry(word, info);
+    if (this._heap.size() < this.k) {
+      insert(entry);
+      return true;
+    }
+    if (this._cmp.compare(entry, this._heap.peek()) > 0) {
+      Entry dropped = this._heap.poll();
+      this._byWord.remove(dropped.word);
+      insert(entry);
+      return true;
+    }
+    return false;
+  }
+
+  void merge(TopWords other) {
+    for (Entry entry : other._heap) {
+      add(entry.word, entry.info);
+    }
+  }
+
+  /**
+   * The words best first.
+   */
+  Map<String, WordInfo> ranked() {
+    List<Entry> entries = new ArrayList<>(this._heap);
+    entries.sort(this._cmp.reversed());
+    Map<String, WordInfo> ranked = new LinkedHashMap<>();
+    for (Entry entry : entries) {
+      ranked.put(entry.word, entry.info);
+    }
+    return ranked;
+  }
+
+  private void insert(Entry entry) {
+    this._heap.add(entry);
+    this._byWord.put(entry.word, entry);
+  }
+
+  final int k;
+  final SortOrder order;
+  private final Comparator<Entry> _cmp;
+  private final PriorityQueue<Entry> _heap;
+  private final Map<String, Entry> _byWord;
+}
@@ -0,0 +1,68 @@
+package org.rkilgore.wordfinder;
+
+import lombok.Builder;
+import lombok.ToString;
+import org.rkilgore.wordfinder.WordFinder.LetterPlacement;
+
+/**
+ * One step of a search, for a TraceSink.  Fields that don't apply to the
+ * kind of event are left at their defaults (null, 0 or '\0').
+ */
+@Builder
+@ToString
+public class TraceEvent {
+
+  public enum Kind {
+    /** A recursion step starts with this state. */
+    ENTER,
+    /** A letter is about to be placed. */
+    PLACE,
+    /** A letter was placed; score, scoreAdd and overUnderScoreAdd are set. */
+    PLACED,
+    /** The tile over or under the placed letter adds overUnderScoreAdd. */
+    OVER_UNDER,
+    /** The search stopped on this branch for the given reason. */
+    PRUNE,
+    /** A word was offered to the results. */
+    ADD_WORD
+  }
+
+  public enum Reason {
+    /** No letters left, or the template is used up and no postfix is allowed. */
+    TERMINATE,
+    /** Not enough letters left to put any in front of the template. */
+    NO_PREFIX_ROOM,
+    /** A template tile asks for a rack letter that isn't there. */
+    MISSING_LETTER,
+    /** The template is used up and the postfix is at its limit. */
+    POSTFIX_FULL,
+    /** No dictionary word starts with the letters so far. */
+    NOT_A_PREFIX,
+    /** The placed letter and the template letter don't make a word. */
+    OVER_UNDER,
+    /**
+     * No word under the node has the letters still needed, or a length
+     * that fits the rest of the template and the letters left.
+     */
+    DEAD_SUBTREE,
+    /** No word under the node can score well enough to make the top k. */
+    SCORE_BOUND
+  }
+
+  public final Kind kind;
+  public final int depth;
+  public final int node;
+  public final LetterPlacement placement;
+  public final Reason reason;
+  public final char letter;
+  public final String word;
+  public final String dots;
+  public final String letters;
+  public final String template;
+  public final String overUnder;
+  public final int score;
+  public final int scoreAdd;
+  public final int overUnderScoreAdd;
+  public final int prefixLen;
+  public final int postfixLen;
+}
@@ -0,0 +1,10 @@
+package org.rkilgore.wordfinder;
+
+/**
+ * Receives trace events from a search.  A search only builds events when a
+ * sink is set, so tracing costs nothing when it is off.  In parallel mode
+ * events arrive from several pool threads at once.
+ */
+public interface TraceSink {
+  void event(TraceEvent event);
+}
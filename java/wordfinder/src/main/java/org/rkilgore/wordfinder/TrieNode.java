@@ -1,77 +1,35 @@
 package org.rkilgore.wordfinder;
 
-import java.io.File;
-import java.io.FileNotFoundException;
-import java.util.HashMap;
-import java.util.Map;
 import java.util.Scanner;
 import lombok.EqualsAndHashCode;
 
+/**
+ * Object view of a single node in a {@link Dawg}.  The search itself walks
+ * the Dawg by node index; this class keeps the original node-at-a-time
+ * lookup surface for callers that want it.
+ */
 @EqualsAndHashCode
 public class TrieNode {
-  public TrieNode(char ch) {
-    this.ch = ch;
-    this.isword = false;
-    this._children = new HashMap<Character, TrieNode>();
-  }
-
   public TrieNode(Scanner dictFileScanner) {
-    this('*');
-    this.readFromFile(dictFileScanner);
+    this(Dawg.fromScanner(dictFileScanner), Dawg.ROOT);
   }
 
   public TrieNode(String dictFilename) {
-    this('*');
-    try {
-      Scanner scanner = new Scanner(new File(dictFilename));
-      this.readFromFile(scanner);
-    } catch (Exception e) {
-      e.printStackTrace();
-    }
-  }
-
-  public TrieNode isPrefix(String prefix) {
-    TrieNode node = this;
-    char[] chars = prefix.toLowerCase().toCharArray();
-    for (char ch : chars) {
-      node = node._children.get(ch);
-      if (node == null) {
-        return null;
-      }
-    }
-    return node;
-  }
-
-  private void readFromFile(Scanner scanner) {
-    try {
-      while (scanner.hasNextLine()) {
-        String word = scanner.nextLine();
-        this.insert(word);
-      }
-    } catch (Exception e) {
-      e.printStackTrace();
-    }
+    this(Dawg.fromFile(dictFilename), Dawg.ROOT);
   }
 
-  void insert(String word) {
-    TrieNode node = this;
-    char[] chars = word.toLowerCase().toCharArray();
-    for (char ch : chars) {
-      node = node.getOrCreateChild(ch);
-    }
-    node.isword = true;
+  TrieNode(Dawg dawg, int node) {
+    this._dawg = dawg;
+    this._node = node;
+    this.isword = dawg.isWord(node);
   }
 
-  private TrieNode getOrCreateChild(char ch) {
-    TrieNode child = this._children.get(ch);
-    if (child == null) {
-      child = new TrieNode(ch);
-      this._children.put(ch, child);
-    }
-    return child;
+  public TrieNode isPrefix(String prefix) {
+    int node = this._dawg.isPrefix(this._node, prefix);
+    return node == Dawg.NONE ? null : new TrieNode(this._dawg, node);
   }
 
-  private char ch;
-  public boolean isword;
-  private Map<Character, TrieNode> _children;
+  public final boolean isword;
+  private final Dawg _dawg;
+  private final int _node;
 }
@@ -1,21 +1,24 @@
 package org.rkilgore.wordfinder;
 
+import java.util.Scanner;
+
 public class TrieTest {
 
   public static void main(String[] args) {
-      TrieNode trie = new TrieNode('*');
-      for (String word : new String[] {"hello", "string", "strings"}) {
-        System.out.printf("insert('%s')\n", word);
-        trie.insert(word);
-      }
+      TrieNode trie = new TrieNode(new Scanner("hello\nstring\nstrings\n"));
       for (String candidate : new String[] {"hello", "hell", "str", "string"}) {
-        System.out.printf("isword('%s') = %s\n", candidate, trie.isPrefix(candidate));
+        System.out.printf("isword('%s') = %s\n", candidate, isword(trie, candidate));
       }
-      System.out.println("\ntrie.insert('HELL')");
-      trie.insert("HELL");
+      System.out.println("\ntrie with 'HELL' added");
+      trie = new TrieNode(new Scanner("hello\nstring\nstrings\nHELL\n"));
 
       for (String candidate : new String[] { "hello", "heLL", "STR", "string" }) {
-        System.out.printf("isword('%s') = %s\n", candidate, trie.isPrefix(candidate));
+        System.out.printf("isword('%s') = %s\n", candidate, isword(trie, candidate));
       }
   }
+
+  private static boolean isword(TrieNode trie, String candidate) {
+    TrieNode node = trie.isPrefix(candidate);
+    return node != null && node.isword;
+  }
 }
@@ -1,34 +1,34 @@
 package org.rkilgore.wordfinder;
 
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Scanner;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
 import java.util.logging.LogManager;
-import java.util.logging.Logger;
-import lombok.AllArgsConstructor;
-
-
-@AllArgsConstructor
-class OverUnderResult {
-  public final boolean check;
-  public final int scoreToAdd;
-  public final boolean isLetter;
-}
 
 
 /**
- * This class is currently NOT thread-safe because of the following
- * instance variables used for a single search:
- *    _requiredLetters
- *    _maxPrefix
- *    _maxPostfix
- *    _words.
+ * A WordFinder holds only the dictionary and letter scores, neither of
+ * which changes after construction.  Everything a search mutates lives in
+ * a SearchContext created per findWords() call, so a single instance can
+ * serve concurrent searches from any number of threads.
  */
 public class WordFinder {
 
@@ -68,6 +68,14 @@ public class WordFinder {
       this.wordMult = wordMult;
     }
 
+    Tile copy() {
+      Tile tile = new Tile(this.name, this.letterMult, this.wordMult);
+      tile.open = this.open;
+      tile.letter = this.letter;
+      tile.isZeroLetter = this.isZeroLetter;
+      return tile;
+    }
+
     public String toString() {
       return this.name;
     }
@@ -84,13 +92,30 @@ public class WordFinder {
     public boolean isZeroLetter;
   }
 
-  enum LetterPlacement {
+  static class SearchTask extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+
+    SearchTask(SearchContext ctx, Runnable search) {
+      this.ctx = ctx;
+      this.search = search;
+    }
+
+    @Override
+    protected void compute() {
+      this.search.run();
+    }
+
+    final SearchContext ctx;
+    private final Runnable search;
+  }
+
+  public enum LetterPlacement {
     PREFIX,
     TEMPLATE,
     POSTFIX
   }
 
-  private static Logger logger = Logger.getLogger("WordFinder");
+  private static final int OU_REJECT = -1;
 
   private void setupLetterScores(boolean wwf) {
     _letterScores.put('a', 1);
@@ -119,70 +144,412 @@ public class WordFinder {
     _letterScores.put('x', 8);
     _letterScores.put('y', wwf ? 3 : 4);
     _letterScores.put('z', wwf ? 10 : 11);
+    for (Map.Entry<Character, Integer> entry : _letterScores.entrySet()) {
+      _letterScoreTable[entry.getKey() - 'a'] = entry.getValue();
+    }
   }
 
 
   public WordFinder(String dictfilename) {
-    this._dict = new TrieNode(dictfilename);
+    this._snapshot = new Snapshot(Dawg.load(dictfilename), 0);
     this.setupLetterScores(true);
-    this.debug = false;
   }
 
   public WordFinder(Scanner scanner) {
-    this._dict = new TrieNode(scanner);
+    this._snapshot = new Snapshot(Dawg.fromScanner(scanner), 0);
     this.setupLetterScores(true);
-    this.debug = false;
   }
 
+  /**
+   * A WordFinder over several word lists at once, held in one Dawg built by
+   * Dawg.union.  It finds words from any of the lists; see forLists to
+   * choose among them.
+   */
+  public WordFinder(List<String> dictfilenames) {
+    this._snapshot = new Snapshot(Dawg.load(dictfilenames), 0);
+    this.setupLetterScores(true);
+  }
+
+  /**
+   * A WordFinder over a dictionary that is already loaded, so several can
+   * share it or it can be loaded somewhere else first.
+   */
+  public WordFinder(Dawg dict) {
+    this._snapshot = new Snapshot(dict, 0);
+    this.setupLetterScores(true);
+  }
+
+  /**
+   * A WordFinder that only finds words from some of this one's word lists:
+   * words in at least one list in anyOf (bit i = list i; 0 = any list) and
+   * in every list in allOf.  forLists(0b11, 0b11) finds the words valid in
+   * both of the first two lists.  The dictionary is shared, not copied.
+   * The new finder starts with this one's settings but has its own cache
+   * and indexes, so keep it for repeated queries.
+   */
+  public WordFinder forLists(int anyOf, int allOf) {
+    WordFinder wf = new WordFinder(this._snapshot.dict.select(anyOf, allOf));
+    wf._defaultMode = this._defaultMode;
+    wf._trace = this._trace;
+    wf._collectStats = this._collectStats;
+    wf.parallel = this.parallel;
+    wf._engine = this._engine;
+    return wf;
+  }
+
+  /**
+   * The mode used for templates that do not start with a mode prefix
+   * ("o|", "u|" or "n|").
+   */
   public Mode getMode() {
-    return this._mode;
+    return this._defaultMode;
   }
 
   public void setMode(Mode mode) {
-    this._mode = mode;
+    this._defaultMode = mode;
   }
 
+  /**
+   * Results of recent searches.  Repeating a query returns the cached
+   * result; a listener passed with a repeated query is sent every cached
+   * word as found.
+   */
+  public QueryCache getCache() {
+    return this._cache;
+  }
+
+  /**
+   * Logs a trace of every search step to the WordFinder logger.
+   */
   public void setDebug(boolean debug) {
-    this.debug = debug;
+    this._trace = debug ? new LoggingTraceSink() : null;
+  }
+
+  /**
+   * When on, each search counts nodes, prunes and words and times its
+   * phases, and returns the numbers in FindResult.stats.  Such searches
+   * bypass the result cache.
+   */
+  public void setCollectStats(boolean collectStats) {
+    this._collectStats = collectStats;
+  }
+
+  /**
+   * Sends a trace of every search step to sink, or turns tracing off if
+   * sink is null.  Searches that are traced bypass the result cache.
+   */
+  public void setTraceSink(TraceSink sink) {
+    this._trace = sink;
+  }
+
+  public Engine getEngine() {
+    return this._engine;
+  }
+
+  /**
+   * Chooses the dictionary structure NORMAL searches walk.  With GADDAG, a
+   * template that has a fixed letter is searched outward from that letter;
+   * other templates, and over/under searches, still use the Dawg.  The
+   * Gaddag is built from the dictionary the first time it is needed, which
+   * takes a few seconds and several times the Dawg's memory.  A GADDAG
+   * search runs on one thread and traces only the words it adds.
+   */
+  public void setEngine(Engine engine) {
+    this._engine = engine;
+  }
+
+  /**
+   * The version of the dictionary searches see now: 0 as loaded, and one
+   * more for each update or reload.
+   */
+  public long getDictionaryVersion() {
+    return this._snapshot.version;
+  }
+
+  /**
+   * Adds and removes words all at once.  Searches already running finish
+   * on the dictionary they started with; every search that starts after
+   * this returns sees all of the changes.  The dictionary is rebuilt, which
+   * takes about as long as loading a word list, so make changes in
+   * batches.  For a finder made by forLists, added words go into (and
+   * removed words come out of) the lists it selects.
+   */
+  public void updateWords(Collection<String> adds, Collection<String> removes) {
+    synchronized (this._writeLock) {
+      publish(this._snapshot.dict.withChanges(adds, removes));
+    }
+  }
+
+  /**
+   * Replaces the dictionary with the one in dictfilename, as a single
+   * update.  Searches carry on with the old dictionary while the new one
+   * loads.
+   */
+  public void reload(String dictfilename) throws IOException {
+    if (!new File(dictfilename).canRead()) {
+      throw new FileNotFoundException(dictfilename);
+    }
+    setDictionary(Dawg.load(dictfilename));
+  }
+
+  /**
+   * Replaces the dictionary, as a single update.
+   */
+  void setDictionary(Dawg dict) {
+    synchronized (this._writeLock) {
+      publish(dict);
+    }
+  }
+
+  private void publish(Dawg dict) {
+    this._snapshot = new Snapshot(dict, this._snapshot.version + 1);
+    // ---> only frees memory: cache keys carry the version, so a search
+    // ---> finishing on the old dictionary can't put a stale hit back
+    this._cache.clear();
+  }
+
+  /**
+   * One version of the dictionary and the indexes built from it.  A search
+   * takes the current one when it starts and uses nothing else, so an
+   * update never changes the dictionary under a running search.
+   */
+  private static class Snapshot {
+    Snapshot(Dawg dict, long version) {
+      this.dict = dict;
+      this.version = version;
+    }
+
+    Gaddag gaddag() {
+      Gaddag gaddag = this._gaddag;
+      if (gaddag == null) {
+        synchronized (this) {
+          gaddag = this._gaddag;
+          if (gaddag == null) {
+            gaddag = Gaddag.fromDawg(this.dict);
+            this._gaddag = gaddag;
+          }
+        }
+      }
+      return gaddag;
+    }
+
+    /**
+     * The index for template-less searches, built from the dictionary the
+     * first time one is made.
+     */
+    AnagramIndex anagrams() {
+      AnagramIndex anagrams = this._anagrams;
+      if (anagrams == null) {
+        synchronized (this) {
+          anagrams = this._anagrams;
+          if (anagrams == null) {
+            anagrams = AnagramIndex.fromDawg(this.dict);
+            this._anagrams = anagrams;
+          }
+        }
+      }
+      return anagrams;
+    }
+
+    String cacheKey(Mode mode, int maxPrefix, int maxPostfix, Rack rack, List<Tile> tiles, TopWords top) {
+      return this.version + "|" + QueryCache.key(mode, maxPrefix, maxPostfix, rack, tiles, top);
+    }
+
+    final Dawg dict;
+    final long version;
+    private volatile Gaddag _gaddag;
+    private volatile AnagramIndex _anagrams;
+  }
+
+  /**
+   * When set, each search is split at its first rack letter (and, for
+   * over/under, at each template start offset) into fork/join tasks on the
+   * common pool.
+   */
+  public void setParallel(boolean parallel) {
+    this.parallel = parallel;
   }
 
   public FindResult findWords(String letters, String template) {
+    return find(letters, template, null, null);
+  }
+
+  /**
+   * Like findWords, but also hands each word to the listener as soon as it
+   * is found, and again whenever a better play for it turns up.
+   */
+  public FindResult findWords(String letters, String template, WordListener listener) {
+    return find(letters, template, null, listener);
+  }
 
+  /**
+   * Like findWords, but keeps only the k best words by the given order and
+   * returns them best first (the result map iterates in that order).
+   * Memory is bounded by k however many words the search turns up.
+   */
+  public FindResult findTopWords(String letters, String template, int k, SortOrder order) {
+    return findTopWords(letters, template, k, order, null);
+  }
+
+  /**
+   * Like findTopWords, but also streams to the listener each word as it
+   * makes the top k (found) or improves its play there (updated).  Words
+   * that never make the list aren't reported, so the search is still
+   * bounded as findTopWords is.  A word reported may later be pushed out.
+   */
+  public FindResult findTopWords(String letters, String template, int k, SortOrder order, WordListener listener) {
+    if (k < 1) {
+      return new FindResult(Collections.emptyMap(), false, String.format("Invalid result count: %d", k), this._defaultMode);
+    }
+    return find(letters, template, new TopWords(k, order), listener);
+  }
+
+  /**
+   * Like findWords for each template in turn, with the results in the same
+   * order, but the NORMAL templates are searched together in a single walk
+   * of the dictionary that serves every template still able to use each
+   * path.  A template repeated in the batch is searched once.  Templates
+   * already in the cache, over/under templates and empty templates are
+   * answered one at a time as findWords would.  Each batched
+   * template's stats, if collected, carry the time of the whole walk.
+   */
+  public List<FindResult> findWordsBatch(String letters, List<String> templates) {
+    long startNanos = System.nanoTime();
+    Snapshot snap = this._snapshot;
+    Rack rack = new Rack(letters);
+    TraceSink trace = this._trace;
+    boolean collectStats = this._collectStats;
+    FindResult[] results = new FindResult[templates.size()];
+    List<SearchContext> batch = new ArrayList<>();
+    List<Integer> batchIndex = new ArrayList<>();
+    List<String> batchKeys = new ArrayList<>();
+    // ---> the same template twice in one batch is only searched once
+    Map<String, Integer> repeats = new HashMap<>();
+    int[] repeatOf = new int[results.length];
+    Arrays.fill(repeatOf, -1);
+    for (int i = 0; i < results.length; ++i) {
+      ParsedTemplate parsed = parseTemplate(templates.get(i));
+      if (parsed.errmsg != null || parsed.mode != Mode.NORMAL || parsed.tiles.isEmpty()) {
+        results[i] = find(snap, letters, parsed, null, null, System.nanoTime());
+        continue;
+      }
+      String cacheKey = trace != null || collectStats
+          ? null : snap.cacheKey(parsed.mode, parsed.maxPrefix, parsed.maxPostfix, rack, parsed.tiles, null);
+      FindResult cached = cacheKey == null ? null : this._cache.get(cacheKey);
+      if (cached != null) {
+        results[i] = cached;
+        continue;
+      }
+      if (cacheKey != null) {
+        Integer first = repeats.putIfAbsent(cacheKey, i);
+        if (first != null) {
+          repeatOf[i] = first;
+          continue;
+        }
+      }
+      batch.add(new SearchContext(snap.dict, this._letterScoreTable, parsed.mode, parsed.tiles,
+                                  parsed.maxPrefix, parsed.maxPostfix, rack.size(),
+                                  trace, false, null, null, collectStats));
+      batchIndex.add(i);
+      batchKeys.add(cacheKey);
+    }
+
+    long searchNanos = System.nanoTime();
+    if (!batch.isEmpty()) {
+      new BatchSearch(snap.dict, rack, batch).search();
+    }
+    long assemblyNanos = System.nanoTime();
+    for (int b = 0; b < batch.size(); ++b) {
+      SearchContext ctx = batch.get(b);
+      FindResult res = new FindResult(Collections.unmodifiableMap(ctx.words), true, "", ctx.mode, ctx.stats);
+      if (batchKeys.get(b) != null) {
+        this._cache.put(batchKeys.get(b), res);
+      }
+      if (ctx.stats != null) {
+        ctx.stats.parseNanos = searchNanos - startNanos;
+        ctx.stats.searchNanos = assemblyNanos - searchNanos;
+        ctx.stats.assemblyNanos = System.nanoTime() - assemblyNanos;
+      }
+      results[batchIndex.get(b)] = res;
+    }
+    for (int i = 0; i < results.length; ++i) {
+      if (repeatOf[i] >= 0) {
+        results[i] = results[repeatOf[i]];
+      }
+    }
+    return Arrays.asList(results);
+  }
+
+  /**
+   * Finds every play of the letters on a whole board, across and down,
+   * scored with the board's bonus squares and any cross-words formed.
+   * Moves come back best first.
+   */
+  public MoveResult findMoves(String letters, Board board) {
+    ValidateResult vres = validate(letters, "");
+    if (!vres.valid) {
+      return new MoveResult(Collections.emptyList(), false, vres.errmsg);
+    }
+    Rack rack = new Rack(letters);
+    List<Move> moves = new MoveGenerator(this._snapshot.dict, this._letterScoreTable, board, rack).generate();
+    return new MoveResult(Collections.unmodifiableList(moves), true, "");
+  }
+
+  /**
+   * A template with its mode prefix and prefix/postfix digits taken off and
+   * its squares turned into tiles.  errmsg is set if it couldn't be parsed.
+   */
+  private static class ParsedTemplate {
+    Mode mode;
     int maxPrefix = 7;
     int maxPostfix = 7;
-    this._mode = Mode.NORMAL;
+    final List<Tile> tiles = new ArrayList<>();
+    String errmsg;
+  }
+
+  private ParsedTemplate parseTemplate(String template) {
+    ParsedTemplate parsed = new ParsedTemplate();
+    parsed.mode = this._defaultMode;
     if (!template.isEmpty()) {
       if (template.matches("^[nou]\\|.*")) {
         char modechar = template.charAt(0);
         switch (modechar) {
+          case 'n':
+            parsed.mode = Mode.NORMAL;
+            break;
           case 'o':
           case 'b':
-            this._mode = Mode.OVER;
+            parsed.mode = Mode.OVER;
             break;
           case 'u':
           case 'a':
-            this._mode = Mode.UNDER;
+            parsed.mode = Mode.UNDER;
             break;
           default:
             System.out.println("unrecognized mode char " + modechar + ": should be one of [n o u]");
-            System.out.println("ignoring mode char and mode = " + this._mode);
+            System.out.println("ignoring mode char and mode = " + parsed.mode);
             break;
         }
         template = template.substring(2);
       }
-      if (Character.isDigit(template.charAt(0))) {
-        maxPrefix = Character.digit(template.charAt(0), 10);
+      if (!template.isEmpty() && Character.isDigit(template.charAt(0))) {
+        parsed.maxPrefix = Character.digit(template.charAt(0), 10);
         template = template.substring(1);
       }
       int last = template.length() - 1;
-      if (Character.isDigit(template.charAt(last))) {
-        maxPostfix = Character.digit(template.charAt(last), 10);
+      if (last >= 0 && Character.isDigit(template.charAt(last))) {
+        parsed.maxPostfix = Character.digit(template.charAt(last), 10);
         template = template.substring(0, last);
       }
+      if (template.isEmpty()) {
+        // ---> only a mode or prefix/postfix limits: there is nothing to fill
+        parsed.errmsg = "invalid template: no tiles after the mode and prefix/postfix digits";
+        return parsed;
+      }
     }
-    System.out.println("mode is " + this._mode);
+    System.out.println("mode is " + parsed.mode);
 
-    List<Tile> tiles = new ArrayList<Tile>();
+    List<Tile> tiles = parsed.tiles;
     boolean modifier = false;
     for (char ch : template.toCharArray()) {
       if (ch == ':') {
@@ -191,7 +558,8 @@ public class WordFinder {
         try {
           modifyLastTile(tiles, ch);
         } catch (Throwable th) {
-          return new FindResult(this._words, false, th.getMessage());
+          parsed.errmsg = th.getMessage();
+          return parsed;
         }
         modifier = false;
       } else if (ch == '.') {
@@ -207,39 +575,100 @@ public class WordFinder {
       } else if (Character.isUpperCase(ch)) {
         tiles.add(Tile.openTileWithLetter(Character.toLowerCase(ch)));
       } else if (Character.isLetter(ch)) {
-        if (this._mode == Mode.NORMAL) {
+        if (parsed.mode == Mode.NORMAL) {
           tiles.add(Tile.forLetter(ch));
         } else {
           tiles.add(Tile.openTileWithLetter(Character.toLowerCase(ch)));
         }
       } else {
-        return new FindResult(this._words, false, String.format("Unrecognized character in template: '%c'", ch));
-      }
-    }
-
-    String requiredLetters = calcRequiredLetters(letters);
-    letters = letters.toLowerCase();
-    this._requiredLetters = requiredLetters;
-    this._maxPrefix = maxPrefix;
-    this._maxPostfix = maxPostfix;
-    this._words = new HashMap<String, WordInfo>();
-    this._fullTemplate = tiles;
-    int charsBeforeFirstLetter = 0;
-    while (tiles.size() > charsBeforeFirstLetter && !tiles.get(charsBeforeFirstLetter).hasLetter()) ++charsBeforeFirstLetter;
-    this._templateFirstLetterIndex = charsBeforeFirstLetter;
-    if (this._mode == Mode.NORMAL) {
-      recurseNormal(0 /* depth */, "" /* sofar */, "" /* dotsSoFar */,
-              ScoreKeeper.empty, this._dict /* nodeSoFar */,
-              letters, tiles, false /* templateStarted */,
-              0 /* curPrefixLen */, 0 /* curPostfixLen */);
+        parsed.errmsg = String.format("Unrecognized character in template: '%c'", ch);
+        return parsed;
+      }
+    }
+
+    return parsed;
+  }
+
+  private FindResult find(String letters, String template, TopWords top, WordListener listener) {
+    long startNanos = System.nanoTime();
+    return find(this._snapshot, letters, parseTemplate(template), top, listener, startNanos);
+  }
+
+  private FindResult find(Snapshot snap, String letters, ParsedTemplate parsed, TopWords top, WordListener listener,
+                          long startNanos) {
+    Mode mode = parsed.mode;
+    if (parsed.errmsg != null) {
+      return new FindResult(Collections.emptyMap(), false, parsed.errmsg, mode);
+    }
+    int maxPrefix = parsed.maxPrefix;
+    int maxPostfix = parsed.maxPostfix;
+    List<Tile> tiles = parsed.tiles;
+
+    Rack rack = new Rack(letters);
+
+    // ---> traced runs and runs collecting stats always search
+    TraceSink trace = this._trace;
+    boolean collectStats = this._collectStats;
+    String cacheKey = trace != null || collectStats ? null : snap.cacheKey(mode, maxPrefix, maxPostfix, rack, tiles, top);
+    if (cacheKey != null) {
+      FindResult cached = this._cache.get(cacheKey);
+      if (cached != null) {
+        if (listener != null) {
+          for (Map.Entry<String, WordInfo> entry : cached.words.entrySet()) {
+            listener.wordFound(entry.getKey(), entry.getValue(), cached.mode);
+          }
+        }
+        return cached;
+      }
+    }
+
+    SearchContext ctx = new SearchContext(snap.dict, this._letterScoreTable, mode, tiles,
+                                          maxPrefix, maxPostfix, rack.size(),
+                                          trace, this.parallel, top,
+                                          listener == null ? null : new WordStream(listener, mode),
+                                          collectStats);
+    int anchor = this._engine == Engine.GADDAG && mode == Mode.NORMAL ? GaddagSearch.anchor(ctx) : -1;
+    Gaddag gaddag = anchor >= 0 ? snap.gaddag() : null;
+    // ---> with no template, the words are just the rack's anagrams
+    AnagramIndex anagrams = mode == Mode.NORMAL && tiles.isEmpty() && Math.min(maxPostfix, rack.size()) <= AnagramIndex.MAX_LENGTH
+        ? snap.anagrams() : null;
+    Runnable search = () -> {
+      if (anagrams != null) {
+        anagrams.search(ctx, rack, this._letterScoreTable, ctx.maxPostfix);
+      } else if (gaddag != null) {
+        new GaddagSearch(gaddag, this._letterScoreTable, ctx, rack).search(anchor);
+      } else if (ctx.mode == Mode.NORMAL) {
+        recurseNormal(ctx, 0 /* depth */, 0 /* len */, 0 /* dotsLen */,
+                0 /* score */, 1 /* wordMult */, Dawg.ROOT /* nodeSoFar */,
+                rack, 0 /* tpos */, false /* templateStarted */,
+                0 /* curPrefixLen */, 0 /* curPostfixLen */);
+      } else {
+        recurseOverUnder(ctx, 0 /* depth */, -1 /* ouStart */, 0 /* ouLen */, 0 /* len */, 0 /* dotsLen */,
+                0 /* score */, 0 /* ouScore */, 1 /* wordMult */, Dawg.ROOT /* nodeSoFar */,
+                rack, 0 /* tpos */, false /* templateStarted */,
+                0 /* curPrefixLen */, 0 /* curPostfixLen */);
+      }
+    };
+    long searchNanos = System.nanoTime();
+    if (ctx.parallel) {
+      ForkJoinPool.commonPool().invoke(new SearchTask(ctx, search));
     } else {
-      recurseOverUnder(0 /* depth */, OverUnder.empty, "" /* sofar */, "" /* dotsSoFar */,
-              ScoreKeeper.empty, this._dict /* nodeSoFar */,
-              letters, tiles, false /* templateStarted */,
-              0 /* curPrefixLen */, 0 /* curPostfixLen */);
+      search.run();
     }
 
-    return new FindResult(this._words, true, "");
+    long assemblyNanos = System.nanoTime();
+    FindResult res = new FindResult(Collections.unmodifiableMap(top != null ? top.ranked() : ctx.words),
+                                    true, "", mode, ctx.stats);
+    if (cacheKey != null) {
+      this._cache.put(cacheKey, res);
+    }
+    if (ctx.stats != null) {
+      long endNanos = System.nanoTime();
+      ctx.stats.parseNanos = searchNanos - startNanos;
+      ctx.stats.searchNanos = assemblyNanos - searchNanos;
+      ctx.stats.assemblyNanos = endNanos - assemblyNanos;
+    }
+    return res;
   }
 
 
@@ -247,7 +676,9 @@ public class WordFinder {
     if (tiles.isEmpty()) {
       throw new RuntimeException(String.format("No tile to modify with mod %c", modch));
     }
-    Tile last = tiles.get(tiles.size() - 1);
+    // ---> never modify the shared OPEN/DLETTER/... tiles in place
+    Tile last = tiles.get(tiles.size() - 1).copy();
+    tiles.set(tiles.size() - 1, last);
     if (modch == '=') {
       last.letterMult = 2;
     } else if (modch == '+') {
@@ -267,430 +698,628 @@ public class WordFinder {
 
 
   private void recurseNormal(
+      SearchContext ctx,
       int depth,
-      String sofar,
-      String dotsSoFar,
-      ScoreKeeper scoreSoFar,
-      TrieNode nodeSoFar,
-      String letters,
-      List<Tile> template,
+      int len,
+      int dotsLen,
+      int score,
+      int wordMult,
+      int nodeSoFar,
+      Rack rack,
+      int tpos,
       boolean templateStarted,
       int curPrefixLen,
       int curPostfixLen) {
 
-    debugLog(String.format("%srecurseNormal sofar=%s dotsSoFar=%s letters=%s template=%s score=%s prefix=%d postfix=%d "
-                           + "templStarted=%s",
-                           forDepth(depth),
-                           sofar, dotsSoFar, letters, template, scoreSoFar, curPrefixLen, curPostfixLen,
-                           String.valueOf(templateStarted)));
+    if (ctx.stats != null) {
+      ++ctx.stats.nodesExpanded;
+    }
+    if (ctx.trace != null) {
+      ctx.trace.event(traceEvent(ctx, TraceEvent.Kind.ENTER, depth, len, rack, tpos)
+          .node(nodeSoFar).dots(ctx.dotsSoFar(dotsLen)).score(score * wordMult)
+          .prefixLen(curPrefixLen).postfixLen(curPostfixLen).build());
+    }
 
     // ---> check for terminate recursion
-    if (shouldTerminate(depth, sofar, letters, template, curPostfixLen)) {
+    if (shouldTerminate(ctx, depth, len, rack, tpos, curPostfixLen)) {
+      return;
+    }
+    if (isDeadSubtree(ctx, len, nodeSoFar, rack, tpos, templateStarted, curPrefixLen, curPostfixLen)) {
+      if (ctx.stats != null) {
+        ++ctx.stats.prunedSubtree;
+      }
+      if (ctx.trace != null) {
+        ctx.trace.event(traceEvent(ctx, TraceEvent.Kind.PRUNE, depth, len, rack, tpos)
+            .reason(TraceEvent.Reason.DEAD_SUBTREE).node(nodeSoFar).build());
+      }
+      return;
+    }
+    if (ctx.top != null && ctx.top.isFull()
+        && cannotMakeTop(ctx, len, score, wordMult, nodeSoFar, rack, tpos, templateStarted, curPrefixLen, curPostfixLen)) {
+      if (ctx.stats != null) {
+        ++ctx.stats.prunedBound;
+      }
+      if (ctx.trace != null) {
+        ctx.trace.event(traceEvent(ctx, TraceEvent.Kind.PRUNE, depth, len, rack, tpos)
+            .reason(TraceEvent.Reason.SCORE_BOUND).node(nodeSoFar).score(score * wordMult).build());
+      }
       return;
     }
 
     // ---> try adding from letters to prefix before template
-    tryAddToPrefix(depth, sofar, dotsSoFar, scoreSoFar, nodeSoFar,
-                   letters, template, templateStarted, curPrefixLen);
+    tryAddToPrefix(ctx, depth, len, dotsLen, score, 0, wordMult, nodeSoFar,
+                   rack, tpos, templateStarted, curPrefixLen);
 
 
     // ---> open tile two types - empty space or preset letter from letters
-    if (!template.isEmpty()) {
-      addFromTemplateNormal(depth, sofar, dotsSoFar, scoreSoFar, nodeSoFar,
-                            letters, template, curPrefixLen);
+    if (tpos < ctx.tiles.length) {
+      addFromTemplateNormal(ctx, depth, len, dotsLen, score, wordMult, nodeSoFar,
+                            rack, tpos, curPrefixLen);
 
     } else {
-      addToPostfixOrTerminate(depth, null, sofar, dotsSoFar, scoreSoFar, nodeSoFar,
-                              letters, curPrefixLen, curPostfixLen);
+      addToPostfixOrTerminate(ctx, depth, -1, 0, len, dotsLen, score, 0, wordMult, nodeSoFar,
+                              rack, curPrefixLen, curPostfixLen);
     }
 
   }
 
   private void recurseOverUnder(
+      SearchContext ctx,
       int depth,
-      OverUnder overUnder,
-      String sofar,
-      String dotsSoFar,
-      ScoreKeeper scoreSoFar,
-      TrieNode nodeSoFar,
-      String letters,
-      List<Tile> template,
+      int ouStart,
+      int ouLen,
+      int len,
+      int dotsLen,
+      int score,
+      int ouScore,
+      int wordMult,
+      int nodeSoFar,
+      Rack rack,
+      int tpos,
       boolean templateStarted,
       int curPrefixLen,
       int curPostfixLen) {
 
-    debugLog(String.format("%srecurseOverUnder overUnder=%s sofar=%s scoreSoFar=%s dotsSoFar=%s letters=%s template=%s prefix=%d postfix=%d "
-                           + "templStarted=%s",
-                           forDepth(depth),
-                           overUnder.isEmpty() ? "" : overUnder.forWord(sofar, this._mode),
-                           sofar, scoreSoFar, dotsSoFar, letters, template, curPrefixLen, curPostfixLen,
-                           String.valueOf(templateStarted)));
+    if (ctx.stats != null) {
+      ++ctx.stats.nodesExpanded;
+    }
+    if (ctx.trace != null) {
+      ctx.trace.event(traceEvent(ctx, TraceEvent.Kind.ENTER, depth, len, rack, tpos)
+          .node(nodeSoFar).dots(ctx.dotsSoFar(dotsLen)).score(score * wordMult + ouScore)
+          .overUnder(ouLen == 0 ? null : ctx.overUnder(ouStart, ouLen).forWord(ctx.sofar(len), ctx.mode))
+          .prefixLen(curPrefixLen).postfixLen(curPostfixLen).build());
+    }
 
     // ---> check for terminate recursion
-    if (shouldTerminate(depth, sofar, letters, template, curPostfixLen)) {
+    if (shouldTerminate(ctx, depth, len, rack, tpos, curPostfixLen)) {
       return;
     }
 
+    boolean canSkip = len == 0 && tpos < ctx.tiles.length && ctx.tiles[tpos].open;
+
+    // ---> in parallel mode, start searching from the next template offset while this one runs
+    SearchTask skipTask = null;
+    if (ctx.parallel && canSkip) {
+      SearchContext child = ctx.fork();
+      Rack childRack = rack.copy();
+      skipTask = new SearchTask(child, () -> recurseOverUnder(
+          child, depth, ouStart, ouLen, len, dotsLen, score, ouScore, wordMult, nodeSoFar,
+          childRack, tpos + 1, true, 0, 0));
+      skipTask.fork();
+    }
+
     // ---> try adding from letters to prefix before template
-    tryAddToPrefix(depth, sofar, dotsSoFar, scoreSoFar, nodeSoFar,
-                   letters, template, templateStarted, curPrefixLen);
+    tryAddToPrefix(ctx, depth, len, dotsLen, score, ouScore, wordMult, nodeSoFar,
+                   rack, tpos, templateStarted, curPrefixLen);
 
 
-    if (!template.isEmpty()) {
+    if (tpos < ctx.tiles.length) {
         // ---> add letter from letters
-        // debugLog(String.format("%s  template tile - add from letters: sofar=%s letters=%s templ=%s",
-                               // forDepth(depth),
-                               // sofar, letters, template));
-
-        Tile nextTile = template.get(0);
+        Tile nextTile = ctx.tiles[tpos];
         if (!nextTile.open) {
           // ---> <letter>:n means add this char from template as a normal template character - i.e. don't do over under
           addLetterFromTemplateAndRecurse(
-            depth, sofar, dotsSoFar, scoreSoFar, nodeSoFar, overUnder,
-            letters, template, curPrefixLen);
+            ctx, depth, len, dotsLen, ouStart, ouLen, score, ouScore, wordMult, nodeSoFar,
+            rack, tpos, curPrefixLen);
         } else {
           addLetterFromLettersAndRecurse(
-              depth, sofar, dotsSoFar, scoreSoFar, nodeSoFar, overUnder,
-              letters, template, curPrefixLen, 0, LetterPlacement.TEMPLATE);
+              ctx, depth, len, dotsLen, ouStart, ouLen, score, ouScore, wordMult, nodeSoFar,
+              rack, tpos, curPrefixLen, 0, LetterPlacement.TEMPLATE);
         }
 
     } else {
-      addToPostfixOrTerminate(depth, overUnder, sofar, dotsSoFar, scoreSoFar, nodeSoFar,
-                              letters, curPrefixLen, curPostfixLen);
+      addToPostfixOrTerminate(ctx, depth, ouStart, ouLen, len, dotsLen, score, ouScore, wordMult, nodeSoFar,
+                              rack, curPrefixLen, curPostfixLen);
     }
 
     // ---> if no word started and more template left, try removng one template letter (start after that point)
-    if (sofar.length() == 0 && !template.isEmpty() && template.get(0).open) {
-      List<Tile> newtemplate = template.subList(1, template.size());
-      recurseOverUnder(depth, overUnder, sofar, dotsSoFar, scoreSoFar, nodeSoFar,
-                       letters, newtemplate, true, 0, 0);
+    if (skipTask != null) {
+      skipTask.join();
+      ctx.merge(skipTask.ctx);
+    } else if (canSkip) {
+      recurseOverUnder(ctx, depth, ouStart, ouLen, len, dotsLen, score, ouScore, wordMult, nodeSoFar,
+                       rack, tpos + 1, true, 0, 0);
     }
   }
 
 
-  private String forDepth(int depth) {
-    return "    ".repeat(depth);
+  private boolean shouldTerminate(SearchContext ctx, int depth, int len, Rack rack, int tpos, int curPostfixLen) {
+    boolean templateEmpty = tpos == ctx.tiles.length;
+    boolean nextIsTemplateLetter = !templateEmpty && !ctx.tiles[tpos].open;
+    boolean cantAddPostfix = curPostfixLen == ctx.maxPostfix;
+    if ((rack.isEmpty() && !nextIsTemplateLetter) ||
+        (templateEmpty && cantAddPostfix)) {
+      if (ctx.stats != null) {
+        ++ctx.stats.prunedTerminate;
+      }
+      if (ctx.trace != null) {
+        ctx.trace.event(traceEvent(ctx, TraceEvent.Kind.PRUNE, depth, len, rack, tpos)
+            .reason(TraceEvent.Reason.TERMINATE).postfixLen(curPostfixLen).build());
+      }
+      return true;
+    }
+    return false;
   }
 
 
-  private boolean shouldTerminate(int depth, String sofar, String letters, List<Tile> template, int curPostfixLen) {
-    boolean nextIsTemplateLetter = !template.isEmpty() && !template.get(0).open;
-    boolean cantAddPostfix = curPostfixLen == this._maxPostfix;
-    if ((letters.isEmpty() && !nextIsTemplateLetter) ||
-        (template.isEmpty() && cantAddPostfix)) {
-      debugLog(String.format("%s    terminate recursion: sofar=%s letters=%s templ=%s postfixLen=%d",
-                             forDepth(depth), sofar, letters, template, curPostfixLen));
+  /**
+   * True if no word that can be finished under node fits a NORMAL search
+   * from here: one of the template letters still to come or a required
+   * letter not yet placed never appears below the node, every word below
+   * it is too short to cover the rest of the template, or every one is too
+   * long for the template, the prefix and postfix room and the letters
+   * left.
+   */
+  private static boolean isDeadSubtree(SearchContext ctx, int len, int node, Rack rack, int tpos,
+                                       boolean templateStarted, int curPrefixLen, int curPostfixLen) {
+    int needed = ctx.lettersFrom[tpos];
+    if (rack.requiredMask != 0) {
+      int placed = 0;
+      for (int i = 0; i < len; ++i) {
+        placed |= 1 << (ctx.word[i] - 'a');
+      }
+      needed |= rack.requiredMask & ~placed;
+    }
+    if ((needed & ~ctx.dict.reachableLetters(node)) != 0) {
       return true;
     }
-    return false;
+    int templateLeft = ctx.tiles.length - tpos;
+    if (ctx.dict.maxRemaining(node) < templateLeft) {
+      return true;
+    }
+    int rackRoom = ctx.openTilesFrom[tpos] + outsideRoom(ctx, tpos, templateStarted, curPrefixLen, curPostfixLen);
+    int longest = templateLeft - ctx.openTilesFrom[tpos] + Math.min(rack.size(), rackRoom);
+    return ctx.dict.minRemaining(node) > longest;
   }
 
+  /**
+   * How many more letters the prefix and postfix could still take.
+   */
+  private static int outsideRoom(SearchContext ctx, int tpos, boolean templateStarted,
+                                 int curPrefixLen, int curPostfixLen) {
+    int prefixRoom = templateStarted || tpos == ctx.tiles.length ? 0 : ctx.maxPrefix - curPrefixLen;
+    return prefixRoom + ctx.maxPostfix - curPostfixLen;
+  }
+
+  /**
+   * True if no word finished under node can make a top-k list that is
+   * already full, judged by an upper bound on its score and length.  The
+   * rest of the template has to be covered, so its word multipliers and
+   * the tiles whose letters are known count in full.  The empty tiles and
+   * as many prefix and postfix letters as the room, the rack and the
+   * longest word under the node allow are filled with the rack's most
+   * valuable tiles that still appear under the node, the best of them on
+   * the triple and double letter tiles.
+   */
+  private static boolean cannotMakeTop(SearchContext ctx, int len, int score, int wordMult, int node, Rack rack,
+                                       int tpos, boolean templateStarted, int curPrefixLen, int curPostfixLen) {
+    int templateLeft = ctx.tiles.length - tpos;
+    int remaining = ctx.dict.maxRemaining(node);
+    int outside = Math.min(Math.min(rack.size() - ctx.openTilesFrom[tpos], remaining - templateLeft),
+                           outsideRoom(ctx, tpos, templateStarted, curPrefixLen, curPostfixLen));
+    int slots = ctx.emptyTilesFrom[tpos] + Math.max(0, outside);
+    int triples = ctx.tripleLettersFrom[tpos];
+    int doubles = ctx.doubleLettersFrom[tpos];
+    int reachable = rack.letterMask() & ctx.dict.reachableLetters(node);
+    int letters = score + ctx.knownScoreFrom[tpos];
+    for (int i = 0; i < 26 && slots > 0 && reachable != 0; ++i) {
+      int letter = ctx.lettersByValue[i];
+      if ((reachable & (1 << letter)) == 0) {
+        continue;
+      }
+      reachable &= ~(1 << letter);
+      for (int n = rack.count(letter); n > 0 && slots > 0; --n, --slots) {
+        int letterMult = triples > 0 ? 3 : doubles > 0 ? 2 : 1;
+        if (triples > 0) {
+          --triples;
+        } else if (doubles > 0) {
+          --doubles;
+        }
+        letters += ctx.letterScores[letter] * letterMult;
+      }
+    }
+    int bound = letters * wordMult * ctx.wordMultFrom[tpos];
+    return !ctx.top.mightAccept(len + Math.min(remaining, templateLeft + Math.max(0, outside)), bound);
+  }
 
   private void tryAddToPrefix(
+      SearchContext ctx,
       int depth,
-      String sofar,
-      String dotsSoFar,
-      ScoreKeeper scoreSoFar,
-      TrieNode nodeSoFar,
-      String letters,
-      List<Tile> template,
+      int len,
+      int dotsLen,
+      int score,
+      int ouScore,
+      int wordMult,
+      int nodeSoFar,
+      Rack rack,
+      int tpos,
       boolean templateStarted,
       int curPrefixLen) {
 
-    if (!template.isEmpty() && !templateStarted && curPrefixLen < this._maxPrefix) {
-      int remainingLettersNeeded = this._mode == Mode.NORMAL
-          ?  (int)template.stream().filter(tile -> tile.open).count()
-          : this._templateFirstLetterIndex + 1;
-
-      if (letters.length() > remainingLettersNeeded) {
-        // debugLog(String.format("%s  prefix add from letters: remainingNeeded=%d for sofar=%s letters=%s templ=%s",
-                               // forDepth(depth),
-                               // remainingLettersNeeded,
-                               // sofar, letters, template));
+    if (tpos < ctx.tiles.length && !templateStarted && curPrefixLen < ctx.maxPrefix) {
+      int remainingLettersNeeded = ctx.mode == Mode.NORMAL
+          ? ctx.openTilesFrom[tpos]
+          : ctx.templateFirstLetterIndex + 1;
 
+      if (rack.size() > remainingLettersNeeded) {
         addLetterFromLettersAndRecurse(
-            depth, sofar, dotsSoFar, scoreSoFar, nodeSoFar, OverUnder.empty,
-            letters, template, curPrefixLen, 0, LetterPlacement.PREFIX);
-      } else {
-        debugLog(String.format("%s  no prefix add: remainingNeeded=%d letters=%s",
-                               forDepth(depth),
-                               remainingLettersNeeded, letters));
+            ctx, depth, len, dotsLen, -1, 0, score, ouScore, wordMult, nodeSoFar,
+            rack, tpos, curPrefixLen, 0, LetterPlacement.PREFIX);
+      } else if (ctx.trace != null) {
+        ctx.trace.event(traceEvent(ctx, TraceEvent.Kind.PRUNE, depth, len, rack, tpos)
+            .reason(TraceEvent.Reason.NO_PREFIX_ROOM).prefixLen(curPrefixLen).build());
       }
     }
   }
 
 
   private void addFromTemplateNormal(
+      SearchContext ctx,
       int depth,
-      String sofar,
-      String dotsSoFar,
-      ScoreKeeper scoreSoFar,
-      TrieNode nodeSoFar,
-      String letters,
-      List<Tile> template,
+      int len,
+      int dotsLen,
+      int score,
+      int wordMult,
+      int nodeSoFar,
+      Rack rack,
+      int tpos,
       int curPrefixLen) {
 
-    assert !template.isEmpty();
+    assert tpos < ctx.tiles.length;
 
-    Tile nextTile = template.get(0);
+    Tile nextTile = ctx.tiles[tpos];
     if (nextTile.open && !nextTile.hasLetter()) {
         // ---> open empty tile ([.-+#!])
         addLetterFromLettersAndRecurse(
-            depth, sofar, dotsSoFar, scoreSoFar, nodeSoFar, OverUnder.empty,
-            letters, template, curPrefixLen, 0, LetterPlacement.TEMPLATE);
+            ctx, depth, len, dotsLen, -1, 0, score, 0, wordMult, nodeSoFar,
+            rack, tpos, curPrefixLen, 0, LetterPlacement.TEMPLATE);
 
     } else {
       // ---> template letter tile - add letter from template
       assert nextTile.open || nextTile.hasLetter();
-      debugLog(String.format("%s  add templ letter '%c': sofar=%s letters=%s templ=%s",
-                             forDepth(depth),
-                             template.get(0).letter,
-                             sofar, letters, template));
 
       if (nextTile.open && nextTile.hasLetter()) {
         // ---> user has requested to put one of their letters in this spot
         char ch = nextTile.letter;
-        if (letters.indexOf(ch) == -1) {
+        if (!rack.has(ch)) {
           // can't fulfill this request
-          debugLog(String.format("%s  recursion stopped - cannot fill template letter tile '%c': sofar=%s letters=%s templ=%s",
-                                 forDepth(depth),
-                                 nextTile.letter, sofar, letters, template));
+          if (ctx.trace != null) {
+            ctx.trace.event(traceEvent(ctx, TraceEvent.Kind.PRUNE, depth, len, rack, tpos)
+                .reason(TraceEvent.Reason.MISSING_LETTER).letter(ch).build());
+          }
           return;
         }
-        letters = letters.replaceFirst(String.valueOf(ch), "");
+        rack.take(ch);
+        addLetterFromTemplateAndRecurse(
+              ctx, depth, len, dotsLen, -1, 0, score, 0, wordMult, nodeSoFar,
+              rack, tpos, curPrefixLen);
+        rack.put(ch);
+      } else {
+        addLetterFromTemplateAndRecurse(
+              ctx, depth, len, dotsLen, -1, 0, score, 0, wordMult, nodeSoFar,
+              rack, tpos, curPrefixLen);
       }
-
-      addLetterFromTemplateAndRecurse(
-            depth, sofar, dotsSoFar, scoreSoFar, nodeSoFar, OverUnder.empty,
-            letters, template, curPrefixLen);
     }
   }
 
 
   private void addToPostfixOrTerminate(
+      SearchContext ctx,
       int depth,
-      OverUnder overUnder,
-      String sofar,
-      String dotsSoFar,
-      ScoreKeeper scoreSoFar,
-      TrieNode nodeSoFar,
-      String letters,
+      int ouStart,
+      int ouLen,
+      int len,
+      int dotsLen,
+      int score,
+      int ouScore,
+      int wordMult,
+      int nodeSoFar,
+      Rack rack,
       int curPrefixLen,
       int curPostfixLen) {
 
-    if (curPostfixLen < this._maxPostfix) {
+    if (curPostfixLen < ctx.maxPostfix) {
       // ---> add letter to the postfix
-      debugLog(String.format("%s  postfix add from letters: sofar=%s letters=%s",
-                             forDepth(depth),
-                             sofar, letters));
-
       addLetterFromLettersAndRecurse(
-          depth, sofar, dotsSoFar, scoreSoFar, nodeSoFar, overUnder,
-          letters, Collections.emptyList(), curPrefixLen, curPostfixLen, LetterPlacement.POSTFIX);
+          ctx, depth, len, dotsLen, ouStart, ouLen, score, ouScore, wordMult, nodeSoFar,
+          rack, ctx.tiles.length, curPrefixLen, curPostfixLen, LetterPlacement.POSTFIX);
 
-    } else {
-      debugLog(String.format("%s  terminate - template and postfix exhausted: sofar=%s letters=%s postfixLen=%d",
-                             forDepth(depth),
-                             letters.charAt(0),
-                             sofar, letters, curPostfixLen));
+    } else if (ctx.trace != null) {
+      ctx.trace.event(traceEvent(ctx, TraceEvent.Kind.PRUNE, depth, len, rack, ctx.tiles.length)
+          .reason(TraceEvent.Reason.POSTFIX_FULL).postfixLen(curPostfixLen).build());
     }
   }
 
 
   private void addLetterFromTemplateAndRecurse(
-        int depth, String sofar, String dotsSoFar,
-        ScoreKeeper scoreSoFar,
-        TrieNode nodeSoFar, OverUnder overUnder,
-        String letters, List<Tile> template,
+        SearchContext ctx,
+        int depth, int len, int dotsLen,
+        int ouStart, int ouLen,
+        int score, int ouScore, int wordMult,
+        int nodeSoFar,
+        Rack rack, int tpos,
         int curPrefixLen) {
-    Tile nextTile = template.get(0);
+    Tile nextTile = ctx.tiles[tpos];
     char ch = nextTile.letter;
-    TrieNode nextNode = nodeSoFar.isPrefix(Character.toString(ch));
-    boolean isOverUnder = this._mode != Mode.NORMAL;
-    debugLog(String.format("%s  ADDING '%c' from template: sofar=%s letters=%s templ=%s",
-                           forDepth(depth), ch,
-                           sofar, letters, template));
-    if (nextNode != null) {
-      String nextsofar = sofar + ch;
-      List<Tile> newtemplate = template.subList(1, template.size());
-      int scoreAdd = nextTile.isZeroLetter ? 0 : _letterScores.get(ch) * template.get(0).letterMult;
-      int wordMult = template.get(0).wordMult;
-      // debugLog(String.format("%sadding to TEMPLATE: scoreAdd=%d wordMult=%d for %s + '%c' on %s space",
-            // forDepth(depth), scoreAdd, wordMult, sofar, ch, template.get(0)));
-      ScoreKeeper nextScore = scoreSoFar.add(scoreAdd).mult(wordMult);
-      if ((nextNode.isword || (nextsofar.length() == 1 && isOverUnder))
-          && (newtemplate.isEmpty() || (isOverUnder && (newtemplate.isEmpty() || newtemplate.get(0).open)))
-          && hasRequiredLetters(nextsofar)) {
-        addWord(depth, nextsofar, nextScore, dotsSoFar, overUnder);
+    int nextNode = ctx.dict.child(nodeSoFar, ch);
+    boolean isOverUnder = ctx.mode != Mode.NORMAL;
+    if (ctx.trace != null) {
+      ctx.trace.event(traceEvent(ctx, TraceEvent.Kind.PLACE, depth, len, rack, tpos)
+          .node(nodeSoFar).placement(LetterPlacement.TEMPLATE).letter(ch).build());
+    }
+    if (nextNode != Dawg.NONE) {
+      ctx.word[len] = ch;
+      int nextLen = len + 1;
+      int nextTpos = tpos + 1;
+      boolean templateDone = nextTpos == ctx.tiles.length;
+      int nextScore = score + (nextTile.isZeroLetter ? 0 : _letterScoreTable[ch - 'a'] * nextTile.letterMult);
+      int nextWordMult = wordMult * nextTile.wordMult;
+      if ((ctx.dict.isWord(nextNode) || (nextLen == 1 && isOverUnder))
+          && (templateDone || (isOverUnder && ctx.tiles[nextTpos].open))
+          && rack.hasRequiredLetters(ctx.word, nextLen)) {
+        addWord(ctx, depth, nextLen, dotsLen, ouStart, ouLen, nextScore, ouScore, nextWordMult);
       }
       if (isOverUnder) {
-        recurseOverUnder(depth+1, overUnder, nextsofar, dotsSoFar, nextScore, nextNode,
-                         letters, newtemplate, true, curPrefixLen, 0);
+        recurseOverUnder(ctx, depth+1, ouStart, ouLen, nextLen, dotsLen, nextScore, ouScore, nextWordMult, nextNode,
+                         rack, nextTpos, true, curPrefixLen, 0);
       } else {
-        recurseNormal(depth+1, nextsofar, dotsSoFar, nextScore, nextNode,
-                      letters, newtemplate, true, curPrefixLen, 0);
+        recurseNormal(ctx, depth+1, nextLen, dotsLen, nextScore, nextWordMult, nextNode,
+                      rack, nextTpos, true, curPrefixLen, 0);
       }
+    } else if (ctx.stats != null) {
+      ++ctx.stats.prunedNoPrefix;
     }
   }
 
   private void addLetterFromLettersAndRecurse(
-        int depth, String sofar, String dotsSoFar,
-        ScoreKeeper scoreSoFar,
-        TrieNode nodeSoFar, OverUnder overUnder,
-        String letters, List<Tile> template,
+        SearchContext ctx,
+        int depth, int len, int dotsLen,
+        int ouStart, int ouLen,
+        int score, int ouScore, int wordMult,
+        int nodeSoFar,
+        Rack rack, int tpos,
         int curPrefixLen, int curPostfixLen, LetterPlacement placement) {
 
-    for (char ch : rmDupes(letters).toCharArray()) {
-      debugLog(String.format("%s  %s ADDING '%c' from letters: sofar=%s letters=%s templ=%s",
-                             forDepth(depth),
-                             placement, ch,
-                             sofar, letters, template));
-
-      boolean isDot = ch == '.';
-      String newletters = letters.replaceFirst(isDot ? "\\." : String.valueOf(ch), "");
-      List<Tile> newtemplate = placement == LetterPlacement.TEMPLATE ? template.subList(1, template.size()) : template;
-      int nextPre = placement == LetterPlacement.PREFIX ? curPrefixLen + 1 : curPrefixLen;
-      int nextPost = placement == LetterPlacement.POSTFIX ? curPostfixLen + 1 : curPostfixLen;
-      boolean nextTemplateStarted = placement != LetterPlacement.PREFIX;
-      boolean isOverUnder = this._mode != Mode.NORMAL;
-
-      char[] searchChars = isDot ? "abcdefghijklmnopqrstuvwxyz".toCharArray() : new char[] { ch };
-      for (char sch : searchChars) {
-        String nextsofar = sofar + sch;
-        TrieNode nextNode = nodeSoFar.isPrefix(Character.toString(sch));
-        if (nextNode == null) {
-          debugLog(String.format("%s    terminate recursion - %s is not a word prefix",
-                                 forDepth(depth), nextsofar));
-          continue;
-        }
-        OverUnderResult oures = maybeCheckOverUnder(depth, sch, template, placement);
-        if (!isOverUnder || oures.check) {
-          String nextDotsSoFar = dotsSoFar + (isDot ? String.valueOf(sch) : "");
-          // FIXME: regarding OverUnderResult.scoreToAdd: this needs to be a supplemental add
-          //        that does not later get multiplied by the word multipliers
-          int letterMult = 
-                (placement == LetterPlacement.TEMPLATE && template.size() > 0
-                     ? template.get(0).letterMult
-                     : 1);
-          int letterAdd = isDot ? 0 : _letterScores.get(sch) * letterMult;
-          int wordMult = 
-              placement == LetterPlacement.TEMPLATE && template.size() > 0
-                  ? template.get(0).wordMult
-                  : 1;
-          ScoreKeeper nextScore = scoreSoFar.add(letterAdd).mult(wordMult);
-          // debugLog(String.format("%sadding to %s: scoreAdd=%d wordMult=%d for %s + '%c' on %s space",
-                // forDepth(depth), placement, scoreAdd, wordMult, sofar, sch, placement == LetterPlacement.TEMPLATE ? template.get(0) : "PREFIX"));
-
-          if (isOverUnder) {
-            int ouScoreAdd = oures.isLetter ? (oures.scoreToAdd + letterAdd) * wordMult : 0;
-            nextScore = nextScore.addOverUnder(ouScoreAdd);
-            OverUnder nextOverUnder = template.size() < 1 || !template.get(0).hasLetter() || placement != LetterPlacement.TEMPLATE
-                                     ? overUnder
-                                     : overUnder.addOverUnderChar(template.get(0).letter, nextsofar.length() - 1);
-            // boolean templateFirstLetterCovered = newtemplate.size() < this._fullTemplate.size() - this._templateFirstLetterIndex;
-            boolean templateFirstLetterCovered = !nextOverUnder.isEmpty();
-            debugLog(String.format("%s    after adding %c%s scoreAdd=%d ouScoreAdd=%d score=%s",
-                                   forDepth(depth),
-                                   sch,
-                                   nextOverUnder.isEmpty() ? "" : " " + nextOverUnder.forWord(nextsofar, this._mode),
-                                   letterAdd,
-                                   ouScoreAdd,
-                                   nextScore));
-            if ((nextNode.isword || (nextsofar.length() == 1 && isOverUnder))
-                && templateFirstLetterCovered
-                && (newtemplate.isEmpty() || newtemplate.get(0).open)
-                /* && hasRequiredLetters(nextsofar) */) {
-              addWord(depth, nextsofar, nextScore, nextDotsSoFar, nextOverUnder);
-            }
-            recurseOverUnder(depth+1, nextOverUnder, nextsofar, nextDotsSoFar, nextScore, nextNode,
-                             newletters, newtemplate, nextTemplateStarted, nextPre, nextPost);
-
-          } else {
-            if ((nextNode.isword || (nextsofar.length() == 1 && isOverUnder))
-                && newtemplate.isEmpty()
-                && hasRequiredLetters(nextsofar)) {
-              addWord(depth, nextsofar, nextScore, nextDotsSoFar, null);
-            }
-            recurseNormal(depth+1, nextsofar, nextDotsSoFar, nextScore, nextNode,
-                          newletters, newtemplate, nextTemplateStarted, nextPre, nextPost);
-          }
+    boolean split = ctx.parallel && rack.size() == ctx.rackSize;
+    List<SearchTask> tasks = split ? new ArrayList<>() : null;
+    int nextTpos = placement == LetterPlacement.TEMPLATE ? tpos + 1 : tpos;
+    int nextPre = placement == LetterPlacement.PREFIX ? curPrefixLen + 1 : curPrefixLen;
+    int nextPost = placement == LetterPlacement.POSTFIX ? curPostfixLen + 1 : curPostfixLen;
+    boolean nextTemplateStarted = placement != LetterPlacement.PREFIX;
+
+    // ---> each distinct rack letter that has a child here, then a blank as each child letter
+    int childMask = ctx.dict.childMask(nodeSoFar);
+    int rackLetters = rack.letterMask() & childMask;
+    for (int i = 0; i <= 26; ++i) {
+      boolean isDot = i == 26;
+      int letter = isDot ? 26 : ctx.letterOrder[i];
+      if (isDot ? rack.blanks() == 0 || childMask == 0 : (rackLetters & (1 << letter)) == 0) {
+        continue;
+      }
+      char ch = isDot ? '.' : (char) ('a' + letter);
+      if (ctx.trace != null) {
+        ctx.trace.event(traceEvent(ctx, TraceEvent.Kind.PLACE, depth, len, rack, tpos)
+            .node(nodeSoFar).placement(placement).letter(ch).build());
+      }
+
+      for (int syms = isDot ? childMask : 1 << letter; syms != 0; syms &= syms - 1) {
+        char sch = (char) ('a' + Integer.numberOfTrailingZeros(syms));
+        if (split) {
+          // ---> each first rack letter becomes its own task with its own result map, rack and buffers
+          SearchContext child = ctx.fork();
+          Rack childRack = rack.copy();
+          tasks.add(new SearchTask(child, () -> {
+            takeLetter(childRack, ch);
+            addSearchLetterAndRecurse(
+                child, depth, len, dotsLen, ouStart, ouLen, score, ouScore, wordMult, nodeSoFar,
+                tpos, placement, sch, isDot, childRack, nextTpos, nextTemplateStarted, nextPre, nextPost);
+          }));
+        } else {
+          takeLetter(rack, ch);
+          addSearchLetterAndRecurse(
+              ctx, depth, len, dotsLen, ouStart, ouLen, score, ouScore, wordMult, nodeSoFar,
+              tpos, placement, sch, isDot, rack, nextTpos, nextTemplateStarted, nextPre, nextPost);
+          putLetter(rack, ch);
         }
       }
     }
-  }
 
-  private OverUnderResult maybeCheckOverUnder(int depth, char ch, List<Tile> template, LetterPlacement placement) {
-    if (this._mode == Mode.NORMAL || placement != LetterPlacement.TEMPLATE || template.size() < 1) {
-      return new OverUnderResult(true, 0, false);
-    }
-    Tile tile = template.get(0);
-    if (!tile.hasLetter()) {
-      return new OverUnderResult(true, 0, false);
+    if (split) {
+      runTasks(ctx, tasks);
     }
-    char tmpl_ch = tile.letter;
+  }
 
-    char[] twoletters = this._mode == Mode.OVER ? new char[] {ch, tmpl_ch}
-                                                : new char[] {tmpl_ch, ch};
-    String overUnderWord = String.valueOf(twoletters);
-    TrieNode node = this._dict.isPrefix(overUnderWord);
-    if (node == null || !node.isword) {
-      // debug stmt
-      debugLog(String.format("%s    terminate recursion from overunder check: %s is not a word",
-                             forDepth(depth), overUnderWord));
-      return new OverUnderResult(false, 0, true);
+  private static void takeLetter(Rack rack, char ch) {
+    if (ch == '.') {
+      rack.takeBlank();
+    } else {
+      rack.take(ch);
     }
-    int scoreToAdd = tile.isZeroLetter ? 0 : _letterScores.get(tmpl_ch);
-    debugLog(String.format("%s    overunder score %d from %c", forDepth(depth), scoreToAdd, tmpl_ch));
-    return new OverUnderResult(true, scoreToAdd, true);
   }
 
-  private void debugLog(String msg) {
-    if (this.debug) {
-      logger.info(msg);
+  private static void putLetter(Rack rack, char ch) {
+    if (ch == '.') {
+      rack.putBlank();
+    } else {
+      rack.put(ch);
     }
   }
 
-  private String rmDupes(String letters) {
-    StringBuilder sb = new StringBuilder();
-    char[] chars = letters.toCharArray();
-    for (char ch : chars) {
-      if (sb.indexOf(String.valueOf(ch)) == -1) {
-        sb.append(ch);
+  private void addSearchLetterAndRecurse(
+        SearchContext ctx,
+        int depth, int len, int dotsLen,
+        int ouStart, int ouLen,
+        int score, int ouScore, int wordMult,
+        int nodeSoFar,
+        int tpos, LetterPlacement placement,
+        char sch, boolean isDot,
+        Rack rack, int nextTpos,
+        boolean nextTemplateStarted, int nextPre, int nextPost) {
+
+    boolean isOverUnder = ctx.mode != Mode.NORMAL;
+    ctx.word[len] = sch;
+    int nextLen = len + 1;
+    int nextNode = ctx.dict.child(nodeSoFar, sch);
+    if (nextNode == Dawg.NONE) {
+      if (ctx.stats != null) {
+        ++ctx.stats.prunedNoPrefix;
+      }
+      if (ctx.trace != null) {
+        ctx.trace.event(traceEvent(ctx, TraceEvent.Kind.PRUNE, depth, nextLen, rack, tpos)
+            .reason(TraceEvent.Reason.NOT_A_PREFIX).node(nodeSoFar).placement(placement).letter(sch).build());
       }
+      return;
     }
-    return sb.toString();
-  }
-
+    int ouTileScore = checkOverUnder(ctx, depth, sch, tpos, placement);
+    if (ouTileScore == OU_REJECT) {
+      return;
+    }
+    int nextDotsLen = dotsLen;
+    if (isDot) {
+      ctx.dots[nextDotsLen++] = sch;
+    }
+    // FIXME: regarding the over/under tile score: this needs to be a supplemental add
+    //        that does not later get multiplied by the word multipliers
+    Tile tile = placement == LetterPlacement.TEMPLATE && tpos < ctx.tiles.length ? ctx.tiles[tpos] : null;
+    int letterMult = tile != null ? tile.letterMult : 1;
+    int letterAdd = isDot ? 0 : _letterScoreTable[sch - 'a'] * letterMult;
+    int tileWordMult = tile != null ? tile.wordMult : 1;
+    int nextScore = score + letterAdd;
+    int nextWordMult = wordMult * tileWordMult;
+    boolean templateDone = nextTpos == ctx.tiles.length;
+
+    if (isOverUnder) {
+      boolean ouLetter = tile != null && tile.hasLetter();
+      int ouScoreAdd = ouLetter ? (ouTileScore + letterAdd) * tileWordMult : 0;
+      int nextOuScore = ouScore + ouScoreAdd;
+      int nextOuStart = ouStart;
+      int nextOuLen = ouLen;
+      if (ouLetter) {
+        if (ouLen == 0) {
+          nextOuStart = len;
+        }
+        ctx.ouChars[nextOuLen++] = tile.letter;
+      }
+      boolean templateFirstLetterCovered = nextOuLen > 0;
+      if (ctx.trace != null) {
+        ctx.trace.event(traceEvent(ctx, TraceEvent.Kind.PLACED, depth, nextLen, rack, nextTpos)
+            .node(nextNode).placement(placement).letter(sch)
+            .overUnder(nextOuLen == 0 ? null : ctx.overUnder(nextOuStart, nextOuLen).forWord(ctx.sofar(nextLen), ctx.mode))
+            .scoreAdd(letterAdd).overUnderScoreAdd(ouScoreAdd).score(nextScore * nextWordMult + nextOuScore).build());
+      }
+      if ((ctx.dict.isWord(nextNode) || nextLen == 1)
+          && templateFirstLetterCovered
+          && (templateDone || ctx.tiles[nextTpos].open)) {
+        addWord(ctx, depth, nextLen, nextDotsLen, nextOuStart, nextOuLen, nextScore, nextOuScore, nextWordMult);
+      }
+      recurseOverUnder(ctx, depth+1, nextOuStart, nextOuLen, nextLen, nextDotsLen, nextScore, nextOuScore, nextWordMult, nextNode,
+                       rack, nextTpos, nextTemplateStarted, nextPre, nextPost);
 
-  private String calcRequiredLetters(String letters) {
-    StringBuilder sb = new StringBuilder();
-    char[] chars = letters.toCharArray();
-    for (char ch : chars) {
-      if (ch != '.' && Character.isUpperCase(ch)) {
-        sb.append(Character.toLowerCase(ch));
+    } else {
+      if (ctx.trace != null) {
+        ctx.trace.event(traceEvent(ctx, TraceEvent.Kind.PLACED, depth, nextLen, rack, nextTpos)
+            .node(nextNode).placement(placement).letter(sch)
+            .scoreAdd(letterAdd).score(nextScore * nextWordMult).build());
       }
+      if (ctx.dict.isWord(nextNode)
+          && templateDone
+          && rack.hasRequiredLetters(ctx.word, nextLen)) {
+        addWord(ctx, depth, nextLen, nextDotsLen, -1, 0, nextScore, 0, nextWordMult);
+      }
+      recurseNormal(ctx, depth+1, nextLen, nextDotsLen, nextScore, nextWordMult, nextNode,
+                    rack, nextTpos, nextTemplateStarted, nextPre, nextPost);
     }
-    return sb.toString();
   }
 
+  private void runTasks(SearchContext ctx, List<SearchTask> tasks) {
+    ForkJoinTask.invokeAll(tasks);
+    for (SearchTask task : tasks) {
+      ctx.merge(task.ctx);
+    }
+  }
+
+  /**
+   * The score the template letter under (or over) the placed letter adds,
+   * 0 if there is no template letter there, or OU_REJECT if the two letters
+   * don't form a word.
+   */
+  private int checkOverUnder(SearchContext ctx, int depth, char ch, int tpos, LetterPlacement placement) {
+    if (ctx.mode == Mode.NORMAL || placement != LetterPlacement.TEMPLATE || tpos >= ctx.tiles.length) {
+      return 0;
+    }
+    Tile tile = ctx.tiles[tpos];
+    if (!tile.hasLetter()) {
+      return 0;
+    }
+    char tmpl_ch = tile.letter;
 
-  private boolean hasRequiredLetters(String word) {
-    char[] chars = this._requiredLetters.toCharArray();
-    for (char ch : chars) {
-      if (word.indexOf(ch) == -1) {
-        return false;
+    if ((ctx.allowed[tpos] & (1 << (ch - 'a'))) == 0) {
+      if (ctx.stats != null) {
+        ++ctx.stats.prunedOverUnder;
       }
+      if (ctx.trace != null) {
+        char first = ctx.mode == Mode.OVER ? ch : tmpl_ch;
+        char second = ctx.mode == Mode.OVER ? tmpl_ch : ch;
+        ctx.trace.event(TraceEvent.builder().kind(TraceEvent.Kind.PRUNE).depth(depth)
+            .reason(TraceEvent.Reason.OVER_UNDER).letter(ch).overUnder(new String(new char[] {first, second})).build());
+      }
+      return OU_REJECT;
+    }
+    int scoreToAdd = tile.isZeroLetter ? 0 : _letterScoreTable[tmpl_ch - 'a'];
+    if (ctx.trace != null) {
+      ctx.trace.event(TraceEvent.builder().kind(TraceEvent.Kind.OVER_UNDER).depth(depth)
+          .letter(tmpl_ch).overUnderScoreAdd(scoreToAdd).build());
     }
-    return true;
+    return scoreToAdd;
   }
 
-  private void addWord(int depth, String word, ScoreKeeper score, String dotVals, OverUnder overUnder) {
-    debugLog(String.format("%s    addWord(%s, %s, %s=%d)", forDepth(depth), word, dotVals, score, score.score()));
-    WordInfo prev = this._words.get(word);
-    if (prev == null || prev.score.score() < score.score()) {
-      this._words.put(word, new WordInfo(score, dotVals, overUnder));
-    } else if (prev == null || dotVals.length() < prev.dotVals.length()) {
-      this._words.put(word, new WordInfo(score, dotVals, overUnder));
+  /**
+   * A trace event with the search position filled in.  Only call this when
+   * ctx.trace is set.
+   */
+  private static TraceEvent.TraceEventBuilder traceEvent(SearchContext ctx, TraceEvent.Kind kind, int depth,
+                                                         int len, Rack rack, int tpos) {
+    return TraceEvent.builder().kind(kind).depth(depth)
+        .word(ctx.sofar(len)).letters(rack.toString()).template(ctx.template(tpos).toString());
+  }
+
+  static void addWord(SearchContext ctx, int depth, int len, int dotsLen, int ouStart, int ouLen,
+                      int score, int ouScore, int wordMult) {
+    addWord(ctx, null, depth, len, dotsLen, ouStart, ouLen, score, ouScore, wordMult);
+  }
+
+  static void addWord(SearchContext ctx, String word, int depth, int len, int dotsLen, int ouStart, int ouLen,
+                      int score, int ouScore, int wordMult) {
+    if (ctx.trace != null) {
+      ctx.trace.event(TraceEvent.builder().kind(TraceEvent.Kind.ADD_WORD).depth(depth)
+          .word(ctx.sofar(len)).dots(ctx.dotsSoFar(dotsLen)).score(score * wordMult + ouScore).build());
+    }
+    boolean accepted = ctx.addWord(word, len, dotsLen, ouStart, ouLen, score, ouScore, wordMult);
+    if (ctx.stats != null) {
+      ++ctx.stats.addWordCalls;
+      if (accepted) {
+        ++ctx.stats.wordsAccepted;
+      }
     }
   }
 
@@ -726,57 +1355,262 @@ public class WordFinder {
   }
 
 
-  public static void main(String[] args) {
-    int argc = 0;
+  /**
+   * The command line of one query, as read by parseArgs.
+   */
+  static class Options {
+    /**
+     * Sets the options that live on the WordFinder rather than being
+     * passed with each search.
+     */
+    void configure(WordFinder wf) {
+      wf.setMode(this.mode);
+      wf.setDebug(this.debug);
+      wf.setParallel(this.parallel);
+      wf.setEngine(this.gaddag ? Engine.GADDAG : Engine.DAWG);
+      wf.setCollectStats(this.stats);
+    }
+
+    /**
+     * Queries with the same key can share one configured WordFinder.
+     */
+    String finderKey() {
+      return String.format("%s|%d|%d|%s|%b|%b|%b|%b", this.wordsfile, this.anyOf, this.allOf, this.mode,
+                           this.debug, this.parallel, this.gaddag, this.stats);
+    }
+
+    /**
+     * The words files named by -w, which may list several separated by
+     * commas.
+     */
+    List<String> wordsfiles() {
+      return Arrays.asList(this.wordsfile.split(","));
+    }
+
+    /**
+     * Prints why and returns false if the letters and template can't be
+     * searched.
+     */
+    boolean validate(PrintStream out) {
+      ValidateResult vres = WordFinder.validate(this.letters, this.template);
+      if (!vres.valid) {
+        out.println(vres.errmsg);
+      }
+      return vres.valid;
+    }
+
+    Options copy() {
+      Options opts = new Options();
+      opts.mode = this.mode;
+      opts.debug = this.debug;
+      opts.parallel = this.parallel;
+      opts.gaddag = this.gaddag;
+      opts.sortbylen = this.sortbylen;
+      opts.stream = this.stream;
+      opts.stats = this.stats;
+      opts.top = this.top;
+      opts.anyOf = this.anyOf;
+      opts.allOf = this.allOf;
+      opts.letters = this.letters;
+      opts.template = this.template;
+      opts.wordsfile = this.wordsfile;
+      opts.boardfile = this.boardfile;
+      opts.batchfile = this.batchfile;
+      return opts;
+    }
+
     Mode mode = Mode.NORMAL;
     boolean debug = false;
-    String usage = "usage: WordFinder [-w <wordsfile>] [-o|-u] [-l] [-d] <letters> <template>";
+    boolean parallel = false;
+    boolean gaddag = false;
+    boolean sortbylen = false;
+    boolean stream = false;
+    boolean stats = false;
+    int top = 0;
+    int anyOf = 0;
+    int allOf = 0;
     String letters = "";
     String template = "";
-    String wordsfile = "./wwf.txt";
-    boolean sortbylen = false;
+    String wordsfile;
+    String boardfile = null;
+    String batchfile = null;
+  }
+
+  static final String USAGE =
+      "usage: WordFinder [-w <wordsfile>[,<wordsfile>...] [-in <list>[,<list>...]] [-all]] [-o|-u] [-l] [-d] [-parallel] [-gaddag] [-top <n>] [-stream] [-stats] <letters> <template>"
+      + "\n       WordFinder [-w <wordsfile>] [-top <n>] -board <boardfile> <letters>"
+      + "\n       WordFinder [-w <wordsfile>] [-o|-u] [-l] [-gaddag] [-top <n>] -batch <queryfile>";
+
+  /**
+   * Reads a command line, taking relative file names from dir.  Returns
+   * null, having printed the usage to out, if the arguments make no sense.
+   */
+  static Options parseArgs(String[] args, File dir, PrintStream out) {
+    int argc = 0;
+    Options opts = new Options();
+    boolean allLists = false;
+    List<Integer> inLists = new ArrayList<>();
+    opts.wordsfile = new File(dir, "wwf.dawg").exists() ? resolve(dir, "wwf.dawg") : resolve(dir, "wwf.txt");
     while (argc < args.length) {
       String arg = nextArg(args, argc++);
       if (arg.startsWith("-")) {
         if ("-under".startsWith(arg)) {
-          mode = Mode.UNDER;
+          opts.mode = Mode.UNDER;
         } else if ("-over".startsWith(arg)) {
-          mode = Mode.OVER;
+          opts.mode = Mode.OVER;
         } else if ("-length".startsWith(arg)) {
-          sortbylen = true;
+          opts.sortbylen = true;
         } else if ("-debug".startsWith(arg)) {
-          debug = true;
+          opts.debug = true;
+        } else if ("-parallel".startsWith(arg)) {
+          opts.parallel = true;
+        } else if ("-gaddag".startsWith(arg)) {
+          opts.gaddag = true;
         } else if ("-words".startsWith(arg)) {
-          wordsfile = nextArg(args, argc++, wordsfile);
+          opts.wordsfile = resolve(dir, nextArg(args, argc++, opts.wordsfile));
+        } else if ("-stream".startsWith(arg)) {
+          opts.stream = true;
+        } else if ("-stats".startsWith(arg)) {
+          opts.stats = true;
+        } else if ("-board".startsWith(arg)) {
+          opts.boardfile = resolve(dir, nextArg(args, argc++, null));
+        } else if ("-batch".startsWith(arg)) {
+          opts.batchfile = resolve(dir, nextArg(args, argc++, null));
+        } else if ("-in".startsWith(arg)) {
+          try {
+            inLists.clear();
+            for (String list : nextArg(args, argc++).split(",")) {
+              inLists.add(Integer.parseInt(list));
+            }
+          } catch (NumberFormatException e) {
+            out.println(USAGE);
+            return null;
+          }
+        } else if ("-all".startsWith(arg)) {
+          allLists = true;
+        } else if ("-top".startsWith(arg)) {
+          try {
+            opts.top = Integer.parseInt(nextArg(args, argc++));
+          } catch (NumberFormatException e) {
+            out.println(USAGE);
+            return null;
+          }
         } else {
-          System.out.println("unrecognized option: "+arg);
-          System.out.println(usage);
-          System.exit(1);
+          out.println("unrecognized option: "+arg);
+          out.println(USAGE);
+          return null;
         }
-      } else if (letters.isEmpty()) {
-        letters = arg;
-      } else if (template.isEmpty()) {
-        template = arg;
+      } else if (opts.letters.isEmpty()) {
+        opts.letters = arg;
+      } else if (opts.template.isEmpty()) {
+        opts.template = arg;
       } else {
-        System.out.println(usage);
+        out.println(USAGE);
       }
     }
+    // ---> checked once -w is known: each -in index must name one of its lists
+    for (int list : inLists) {
+      if (list < 0 || list >= opts.wordsfiles().size()) {
+        out.println(String.format("no word list %d: -in counts the -w lists from 0", list));
+        out.println(USAGE);
+        return null;
+      }
+      opts.anyOf |= 1 << list;
+    }
+    if (allLists) {
+      // ---> every list named by -in, or every list given to -w
+      opts.allOf = opts.anyOf != 0 ? opts.anyOf : (1 << opts.wordsfiles().size()) - 1;
+    }
+    return opts;
+  }
 
-    ValidateResult vres = validate(letters, template);
-    if (!vres.valid) {
-      System.out.println(vres.errmsg);
+  static String resolve(File dir, String filename) {
+    if (filename == null || new File(filename).isAbsolute()) {
+      return filename;
+    }
+    if (filename.contains(",")) {
+      StringBuilder sb = new StringBuilder();
+      for (String part : filename.split(",")) {
+        sb.append(sb.length() == 0 ? "" : ",").append(resolve(dir, part));
+      }
+      return sb.toString();
+    }
+    return new File(dir, filename).getPath();
+  }
+
+  public static void main(String[] args) {
+    Options opts = parseArgs(args, new File("."), System.out);
+    if (opts == null) {
+      System.exit(1);
+    }
+    if (opts.batchfile != null) {
+      runBatch(opts);
+      return;
+    }
+    if (!opts.validate(System.out)) {
       return;
     }
 
     // WordFinder.reportTime("loading dictionary...");
-    WordFinder wf = new WordFinder(wordsfile);
-    wf._mode = mode;
-    wf.setDebug(debug);
+    Dawg dict;
+    try {
+      dict = Dawg.load(opts.wordsfiles());
+    } catch (IllegalArgumentException e) {
+      System.out.println(e.getMessage());
+      System.exit(1);
+      return;
+    }
+    WordFinder wf = new WordFinder(dict.select(opts.anyOf, opts.allOf));
+    opts.configure(wf);
     // WordFinder.reportTime("loaded.");
 
-    FindResult findres = wf.findWords(letters, template);
+    runQuery(wf, opts, System.out);
+  }
+
+  private static void runBatch(Options opts) {
+    // ---> keep the results clean: what searches print themselves goes to stderr
+    PrintStream results = System.out;
+    System.setOut(System.err);
+    try (BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(opts.batchfile),
+                                                                      StandardCharsets.UTF_8))) {
+      new QueryBatch(opts, new File("."), Runtime.getRuntime().availableProcessors()).run(in, results);
+    } catch (IOException e) {
+      e.printStackTrace();
+      System.exit(1);
+    }
+  }
+
+  /**
+   * Runs a parsed query against a configured WordFinder and prints what
+   * the command line prints.
+   */
+  static void runQuery(WordFinder wf, Options opts, PrintStream out) {
+    if (opts.boardfile != null) {
+      printMoves(wf, opts.letters, opts.boardfile, opts.top, out);
+      return;
+    }
+
+    String letters = opts.letters;
+    String template = opts.template;
+    int top = opts.top;
+
+    // ---> with -stream, print each word as it is found, then the sorted list
+    WordListener printer = !opts.stream ? null : new WordListener() {
+      @Override
+      public void wordFound(String word, WordInfo info, Mode mode) {
+        out.println("found " + formatWord(word, info, mode));
+      }
+
+      @Override
+      public void wordUpdated(String word, WordInfo info, Mode mode) {
+        out.println("better " + formatWord(word, info, mode));
+      }
+    };
+    FindResult findres = top > 0
+        ? wf.findTopWords(letters, template, top, opts.sortbylen ? SortOrder.LENGTH : SortOrder.SCORE, printer)
+        : wf.findWords(letters, template, printer);
     if (!findres.ok) {
-      System.out.println(findres.errmsg);
+      out.println(findres.errmsg);
       return;
     }
     Map<String, WordInfo> map = findres.words;
@@ -784,26 +1618,70 @@ public class WordFinder {
 
     List<String> words = new ArrayList<>(map.keySet());
     if (words.size() < 1) {
-      System.out.println("no words found");
-    }
-    final boolean bylen = sortbylen;
-    words.sort((a, b) -> {
-        WordInfo wia = map.get(a);
-        WordInfo wib = map.get(b);
-        return bylen
-            ? sortByLength(a, b, wia, wib)
-            : sortByScore(a, b, wia, wib);
-    });
+      out.println("no words found");
+    }
+    final boolean bylen = opts.sortbylen;
+    if (top > 0) {
+      // ---> already ranked best first; list the best last like the full output
+      Collections.reverse(words);
+    } else {
+      words.sort((a, b) -> {
+          WordInfo wia = map.get(a);
+          WordInfo wib = map.get(b);
+          return bylen
+              ? sortByLength(a, b, wia, wib)
+              : sortByScore(a, b, wia, wib);
+      });
+    }
     for (String word : words) {
       if (!word.equals(template.toLowerCase().replaceAll("\\d", ""))) {
-        WordInfo winfo = map.get(word);
-        System.out.printf(Locale.ROOT, "%s%s%s score:%d%n",
-                winfo.dotVals.isEmpty() ? "" : winfo.dotVals + ": ",
-                word,
-                winfo.overUnder.isEmpty() ? "" : String.format(" %s", winfo.overUnder.forWord(word, wf._mode)),
-                winfo.score.score());
+        out.println(formatWord(word, map.get(word), findres.mode));
       }
     }
+    if (findres.stats != null) {
+      out.println("stats: " + findres.stats);
+    }
+  }
+
+  private static void printMoves(WordFinder wf, String letters, String boardfile, int top, PrintStream out) {
+    Board board;
+    try (Scanner scanner = new Scanner(new File(boardfile))) {
+      List<String> rows = new ArrayList<>();
+      while (scanner.hasNextLine()) {
+        String row = scanner.nextLine().trim();
+        if (!row.isEmpty()) {
+          rows.add(row);
+        }
+      }
+      board = Board.parse(rows);
+    } catch (IOException | IllegalArgumentException e) {
+      out.println(e.getMessage());
+      return;
+    }
+    MoveResult moveres = wf.findMoves(letters, board);
+    if (!moveres.ok) {
+      out.println(moveres.errmsg);
+      return;
+    }
+    List<Move> moves = moveres.moves;
+    if (moves.isEmpty()) {
+      out.println("no moves found");
+    }
+    if (top > 0 && moves.size() > top) {
+      moves = moves.subList(0, top);
+    }
+    // ---> best first from findMoves; list the best last like the word output
+    for (int i = moves.size() - 1; i >= 0; --i) {
+      out.println(moves.get(i));
+    }
+  }
+
+  static String formatWord(String word, WordInfo winfo, Mode mode) {
+    return String.format(Locale.ROOT, "%s%s%s score:%d",
+            winfo.dotVals.isEmpty() ? "" : winfo.dotVals + ": ",
+            word,
+            winfo.overUnder.isEmpty() ? "" : String.format(" %s", winfo.overUnder.forWord(word, mode)),
+            winfo.score.score());
   }
 
   static int sortByScore(String a, String b, WordInfo wia, WordInfo wib) {
@@ -819,6 +1697,26 @@ public class WordFinder {
     return a.compareTo(b);
   }
 
+  /**
+   * Like sortByScore, but a play using fewer blanks ranks higher, and
+   * otherwise the blank letters and then the word that sort first.
+   */
+  static int sortByScoreFewestBlanks(String a, String b, WordInfo wia, WordInfo wib) {
+    if (wia.score.score() != wib.score.score()) {
+      return wia.score.score() - wib.score.score();
+    }
+    if (a.length() != b.length()) {
+      return a.length() - b.length();
+    }
+    if (wia.dotVals.length() != wib.dotVals.length()) {
+      return wib.dotVals.length() - wia.dotVals.length();
+    }
+    if (!wia.dotVals.equals(wib.dotVals)) {
+      return wib.dotVals.compareTo(wia.dotVals);
+    }
+    return b.compareTo(a);
+  }
+
   static int sortByLength(String a, String b, WordInfo wia, WordInfo wib) {
     if (a.length() != b.length()) {
       return a.length() - b.length();
@@ -848,15 +1746,15 @@ public class WordFinder {
     return new ValidateResult(true, "inputs are valid");
   }
 
-  private boolean debug;
-  private TrieNode _dict;
-  private Map<String, WordInfo> _words;
-  private Map<Character, Integer> _letterScores = new HashMap<>();
-  private List<Tile> _fullTemplate;
-  private int _templateFirstLetterIndex;
-  private String _requiredLetters;
-  private Mode _mode;
-  private int _maxPrefix;
-  private int _maxPostfix;
+  private volatile TraceSink _trace;
+  private volatile boolean _collectStats;
+  private volatile boolean parallel;
+  private volatile Engine _engine = Engine.DAWG;
+  private volatile Mode _defaultMode = Mode.NORMAL;
+  private volatile Snapshot _snapshot;
+  private final Object _writeLock = new Object();
+  private final QueryCache _cache = new QueryCache(QueryCache.DEFAULT_MAX_WORDS);
+  private final Map<Character, Integer> _letterScores = new HashMap<>();
+  private final int[] _letterScoreTable = new int[26];
   private static long _lastTime = 0;
 }
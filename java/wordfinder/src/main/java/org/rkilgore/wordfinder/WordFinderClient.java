@@ -0,0 +1,54 @@
+package org.rkilgore.wordfinder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.ConnectException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+
+
+/**
+ * Takes the same arguments as WordFinder.main, sends them to a running
+ * WordFinderServer and prints its answer.  If no server is listening the
+ * query is run in this process instead, loading the dictionary as usual.
+ *
+ * The port is WordFinderServer.DEFAULT_PORT unless WORDFINDER_PORT is set.
+ */
+public class WordFinderClient {
+
+  public static void main(String[] args) throws IOException {
+    String portEnv = System.getenv("WORDFINDER_PORT");
+    int port = portEnv == null ? WordFinderServer.DEFAULT_PORT : Integer.parseInt(portEnv);
+    StringBuilder line = new StringBuilder(new File(".").getAbsolutePath());
+    for (String arg : args) {
+      line.append('\t').append(arg);
+    }
+    line.append('\n');
+
+    Socket socket;
+    try {
+      socket = new Socket(InetAddress.getLoopbackAddress(), port);
+    } catch (ConnectException e) {
+      WordFinder.main(args);
+      return;
+    }
+    try (Socket conn = socket) {
+      Writer writer = new OutputStreamWriter(conn.getOutputStream(), StandardCharsets.UTF_8);
+      writer.write(line.toString());
+      writer.flush();
+      InputStream in = conn.getInputStream();
+      OutputStream out = System.out;
+      byte[] buf = new byte[8192];
+      int n;
+      while ((n = in.read(buf)) > 0) {
+        out.write(buf, 0, n);
+      }
+      out.flush();
+    }
+  }
+}
@@ -0,0 +1,161 @@
+package org.rkilgore.wordfinder;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+
+/**
+ * Answers WordFinder command lines sent over a local socket, so the JVM
+ * and the dictionaries stay loaded between queries.
+ *
+ * Each connection carries one query: a line holding the client's working
+ * directory and then the command line arguments, separated by tabs.  The
+ * server prints to the connection exactly what WordFinder.main would print
+ * and closes it.  Queries run concurrently on a fixed pool of workers,
+ * sharing dictionaries and WordFinders through a FinderPool, which also
+ * reloads a words file that changes without stopping the server.
+ *
+ * The server only listens on the loopback address, and still doesn't
+ * trust its clients with the files it can read: -board and -batch are
+ * refused, and a dictionary must have been preloaded or sit under the
+ * directory the server was started in.  See WordFinderClient.
+ */
+public class WordFinderServer {
+
+  public static final int DEFAULT_PORT = 7341;
+
+  public WordFinderServer(int port, int threads) {
+    this.port = port;
+    this._workers = Executors.newFixedThreadPool(threads);
+    this._finders = new FinderPool();
+    this._root = canonical(".") + File.separator;
+    this._preloaded = ConcurrentHashMap.newKeySet();
+  }
+
+  /**
+   * Loads a dictionary ahead of the first query that needs it, and lets
+   * queries use it wherever it is.
+   */
+  public void preload(String wordsfile) {
+    for (String part : wordsfile.split(",")) {
+      this._preloaded.add(canonical(part));
+    }
+    this._finders.dict(wordsfile);
+  }
+
+  /**
+   * Accepts connections until the socket fails.
+   */
+  public void serve() throws IOException {
+    try (ServerSocket server = new ServerSocket(this.port, 50, InetAddress.getLoopbackAddress())) {
+      while (true) {
+        Socket socket = server.accept();
+        this._workers.execute(() -> answer(socket));
+      }
+    } finally {
+      this._workers.shutdown();
+    }
+  }
+
+  private void answer(Socket socket) {
+    try (Socket conn = socket;
+         BufferedReader in = new BufferedReader(new InputStreamReader(conn.getInputStream(), StandardCharsets.UTF_8));
+         PrintStream out = new PrintStream(new BufferedOutputStream(conn.getOutputStream()), false, "UTF-8")) {
+      String line = in.readLine();
+      if (line == null) {
+        return;
+      }
+      String[] fields = line.split("\t", -1);
+      String[] args = Arrays.copyOfRange(fields, 1, fields.length);
+      WordFinder.Options opts = WordFinder.parseArgs(args, new File(fields[0]), out);
+      if (opts != null && permitted(opts, out) && opts.validate(out)) {
+        try {
+          WordFinder.runQuery(this._finders.finder(opts), opts, out);
+        } catch (RuntimeException e) {
+          // ---> report it to the client like any other bad query
+          e.printStackTrace();
+          out.println("error: " + e);
+        }
+      }
+      out.flush();
+    } catch (IOException e) {
+      e.printStackTrace();
+    }
+  }
+
+  /**
+   * Whether the query only touches files the server is willing to read,
+   * printing why not if it isn't.
+   */
+  private boolean permitted(WordFinder.Options opts, PrintStream out) {
+    if (opts.boardfile != null || opts.batchfile != null) {
+      out.println("-board and -batch aren't available through the server");
+      return false;
+    }
+    for (String wordsfile : opts.wordsfiles()) {
+      String path = canonical(wordsfile);
+      if (!this._preloaded.contains(path) && !path.startsWith(this._root)) {
+        out.println("dictionary not available on this server: " + wordsfile);
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static String canonical(String filename) {
+    try {
+      return new File(filename).getCanonicalPath();
+    } catch (IOException e) {
+      return new File(filename).getAbsolutePath();
+    }
+  }
+
+  public static void main(String[] args) throws IOException {
+    String usage = "usage: WordFinderServer [-port <n>] [-threads <n>] [<wordsfile> ...]";
+    int port = DEFAULT_PORT;
+    int threads = Runtime.getRuntime().availableProcessors();
+    int argc = 0;
+    try {
+      while (argc < args.length && args[argc].startsWith("-")) {
+        String arg = args[argc++];
+        if ("-port".startsWith(arg) && argc < args.length) {
+          port = Integer.parseInt(args[argc++]);
+        } else if ("-threads".startsWith(arg) && argc < args.length) {
+          threads = Integer.parseInt(args[argc++]);
+        } else {
+          System.out.println(usage);
+          System.exit(1);
+        }
+      }
+    } catch (NumberFormatException e) {
+      System.out.println(usage);
+      System.exit(1);
+    }
+    WordFinderServer server = new WordFinderServer(port, threads);
+    for (; argc < args.length; ++argc) {
+      server.preload(args[argc]);
+    }
+    System.out.printf("serving on port %d with %d threads%n", port, threads);
+    server.serve();
+  }
+
+  public final int port;
+  private final ExecutorService _workers;
+  private final FinderPool _finders;
+  /** The directory the server started in, with a trailing separator. */
+  private final String _root;
+  private final Set<String> _preloaded;
+}
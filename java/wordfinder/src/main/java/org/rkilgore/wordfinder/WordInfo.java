@@ -8,6 +8,20 @@ public class WordInfo {
     this.overUnder = overUnder != null ? overUnder : OverUnder.empty;
   }
 
+  /**
+   * Whether this way of making a word should replace prev: a higher score
+   * wins, otherwise fewer blanks.  Between two that tie on both, the blank
+   * letters that sort first win, so the result doesn't depend on which one
+   * a search happens to find first.
+   */
+  boolean replaces(WordInfo prev) {
+    if (prev.score.score() < this.score.score() || this.dotVals.length() < prev.dotVals.length()) {
+      return true;
+    }
+    return prev.score.score() == this.score.score() && this.dotVals.length() == prev.dotVals.length()
+        && this.dotVals.compareTo(prev.dotVals) < 0;
+  }
+
   public ScoreKeeper score;
   public String dotVals;
   public OverUnder overUnder;
@@ -0,0 +1,19 @@
+package org.rkilgore.wordfinder;
+
+/**
+ * Receives words while a search is still running.  Calls come from the
+ * search thread, or from pool threads in parallel mode, but never more than
+ * one at a time for a given search.
+ */
+public interface WordListener {
+  /**
+   * A word found for the first time.
+   */
+  void wordFound(String word, WordInfo info, Mode mode);
+
+  /**
+   * A better play for a word already reported: a higher score, or the same
+   * word using fewer blanks.
+   */
+  void wordUpdated(String word, WordInfo info, Mode mode);
+}
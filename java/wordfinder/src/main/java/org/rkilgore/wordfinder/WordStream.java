@@ -0,0 +1,35 @@
+package org.rkilgore.wordfinder;
+
+import java.util.HashMap;
+import java.util.Map;
+
+
+/**
+ * Passes words on to a WordListener as a search finds them.  Parallel
+ * branches all report through the same stream, so it remembers the best
+ * play reported for each word and only passes on first finds and real
+ * improvements.
+ */
+class WordStream {
+
+  WordStream(WordListener listener, Mode mode) {
+    this._listener = listener;
+    this._mode = mode;
+    this._reported = new HashMap<>();
+  }
+
+  synchronized void offer(String word, WordInfo info) {
+    WordInfo prev = this._reported.get(word);
+    if (prev == null) {
+      this._reported.put(word, info);
+      this._listener.wordFound(word, info, this._mode);
+    } else if (info.replaces(prev)) {
+      this._reported.put(word, info);
+      this._listener.wordUpdated(word, info, this._mode);
+    }
+  }
+
+  private final WordListener _listener;
+  private final Mode _mode;
+  private final Map<String, WordInfo> _reported;
+}
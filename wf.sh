@@ -3,4 +3,6 @@
 export PATH="/Library/Java/JavaVirtualMachines/jdk-12.jdk/Contents/Home/bin:$PATH"
 
 cd $(dirname `realpath $0`)
-java -jar wordfinder.jar "$@"
+# answered by a running WordFinderServer if there is one, e.g.
+#   java -cp wordfinder.jar org.rkilgore.wordfinder.WordFinderServer wwf.dawg &
+java -cp wordfinder.jar org.rkilgore.wordfinder.WordFinderClient "$@"